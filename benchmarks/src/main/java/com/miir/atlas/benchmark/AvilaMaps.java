@@ -0,0 +1,77 @@
+package com.miir.atlas.benchmark;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.AtlasMapInfo;
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.util.Identifier;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * loads the maps from the example avila datapack so benchmarks measure a real map instead of synthetic noise. the map
+ * directory can be overridden with {@code -Datlas.benchmark.maps=<dir>} to benchmark other datapacks.
+ */
+public final class AvilaMaps {
+    public static final Path DIRECTORY = Path.of(System.getProperty("atlas.benchmark.maps", "example/avila/data/avila/atlas/map"));
+    public static final Identifier HEIGHTMAP = Identifier.of("avila", "atlas/map/heightmap");
+    public static final Identifier BIOMES = Identifier.of("avila", "atlas/map/biomes");
+    public static final int STARTING_Y = 6;
+    /**
+     * the colors used by the avila biome map, in the same order as the biomes in its dimension file
+     */
+    public static final int[] BIOME_COLORS = {
+            7180861, 12890200, 3378218, 7570739, 11445578, 16777215, 8373336, 9088392,
+            2247968, 5395026, 3226251, 4672912, 1647754, 1054558, 9671571, 3376467
+    };
+
+    private AvilaMaps() {
+    }
+
+    public static void bootstrap() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    public static AtlasMapInfo mapInfo(float horizontalScale) {
+        return new AtlasMapInfo(HEIGHTMAP, horizontalScale, 1, STARTING_Y);
+    }
+
+    public static Path file(Identifier id) {
+        String path = id.getPath();
+        return DIRECTORY.resolve(path.substring(path.lastIndexOf('/') + 1) + ".png");
+    }
+
+    public static byte[] readBytes(Identifier id) throws IOException {
+        return Files.readAllBytes(file(id));
+    }
+
+    /**
+     * loads a map into atlas's shared map cache, where the biome source and predicates look it up
+     */
+    public static NamespacedMapImage load(Identifier id, NamespacedMapImage.Type type) throws IOException {
+        NamespacedMapImage map = Atlas.getOrCreateMap(id, type);
+        map.initialize(ImageIO.read(file(id).toFile()));
+        return map;
+    }
+
+    /**
+     * @return {@code count} block coordinates spread uniformly over the map, as alternating x and z values
+     */
+    public static int[] randomPoints(NamespacedMapImage map, float horizontalScale, int count, long seed) {
+        Random random = new Random(seed);
+        int halfWidth = (int) (map.getWidth() / 2 * horizontalScale);
+        int halfHeight = (int) (map.getHeight() / 2 * horizontalScale);
+        int[] points = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = random.nextInt(-halfWidth, halfWidth);
+            points[2 * i + 1] = random.nextInt(-halfHeight, halfHeight);
+        }
+        return points;
+    }
+}
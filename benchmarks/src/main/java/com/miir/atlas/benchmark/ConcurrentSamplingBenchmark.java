@@ -0,0 +1,110 @@
+package com.miir.atlas.benchmark;
+
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * many worldgen threads sampling one shared heightmap at once. the {@code chunkGrid*} variants differ only in thread
+ * count; with immutable, safely published rasters readers never contend, so throughput (reported per thread group,
+ * i.e. summed over all threads) should grow linearly with the number of cores. {@code republish} samples on three
+ * threads while a fourth keeps replacing the map's raster, as a reload does, to show that readers don't stall on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentSamplingBenchmark {
+    private static final int POINTS = 4096;
+
+    private NamespacedMapImage heightmap;
+    private BufferedImage image;
+    private int[] chunks;
+
+    @State(Scope.Thread)
+    public static class Sampler {
+        final int[] grid = new int[256];
+        int next = ThreadLocalRandom.current().nextInt(POINTS);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.heightmap = AvilaMaps.load(AvilaMaps.HEIGHTMAP, NamespacedMapImage.Type.GRAYSCALE);
+        this.image = ImageIO.read(AvilaMaps.file(AvilaMaps.HEIGHTMAP).toFile());
+        this.chunks = AvilaMaps.randomPoints(this.heightmap, 1, POINTS, 43);
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] &= ~0xF;
+        }
+    }
+
+    private int[] sample(Sampler sampler) {
+        int i = (sampler.next++ & (POINTS - 1)) << 1;
+        this.heightmap.sampleElevations(this.chunks[i], this.chunks[i + 1], 16, 16, 1, 1, 1, AvilaMaps.STARTING_Y, Integer.MIN_VALUE, sampler.grid, 0);
+        return sampler.grid;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] chunkGrid1(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int[] chunkGrid2(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int[] chunkGrid4(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int[] chunkGrid8(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] chunkGridAllCores(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Group("republish")
+    @GroupThreads(3)
+    public int[] republishSample(Sampler sampler) {
+        return this.sample(sampler);
+    }
+
+    @Benchmark
+    @Group("republish")
+    @GroupThreads(1)
+    public NamespacedMapImage republishWrite() {
+        this.heightmap.initialize(this.image);
+        return this.heightmap;
+    }
+}
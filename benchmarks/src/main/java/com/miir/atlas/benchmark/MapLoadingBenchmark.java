@@ -0,0 +1,48 @@
+package com.miir.atlas.benchmark;
+
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * decoding and populating a map from png bytes already in memory, so disk speed doesn't factor in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapLoadingBenchmark {
+    @Param({"GRAYSCALE", "COLOR"})
+    public NamespacedMapImage.Type type;
+
+    private byte[] png;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.png = AvilaMaps.readBytes(this.type == NamespacedMapImage.Type.COLOR ? AvilaMaps.BIOMES : AvilaMaps.HEIGHTMAP);
+    }
+
+    @Benchmark
+    public NamespacedMapImage load() throws IOException {
+        NamespacedMapImage map = new NamespacedMapImage("benchmark:map", this.type);
+        map.initialize(ImageIO.read(new ByteArrayInputStream(this.png)));
+        return map;
+    }
+}
@@ -0,0 +1,85 @@
+package com.miir.atlas.benchmark;
+
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * heightmap sampling: single points as used by getHeight and the surface predicate, and whole chunk grids as used by
+ * populateNoise. {@code chunkGridPointwise} is the old per-column path, {@code chunkGridBatch} the grid api.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapSamplingBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"1", "2.5"})
+    public float horizontalScale;
+
+    private NamespacedMapImage heightmap;
+    private int[] points;
+    private int[] chunks;
+    private int next;
+    private final int[] grid = new int[256];
+    private final float[] floatGrid = new float[256];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.heightmap = AvilaMaps.load(AvilaMaps.HEIGHTMAP, NamespacedMapImage.Type.GRAYSCALE);
+        this.points = AvilaMaps.randomPoints(this.heightmap, this.horizontalScale, POINTS, 42);
+        this.chunks = AvilaMaps.randomPoints(this.heightmap, this.horizontalScale, POINTS, 43);
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] &= ~0xF;
+        }
+    }
+
+    @Benchmark
+    public double singlePoint() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        return this.heightmap.getElevation(this.points[i], this.points[i + 1], this.horizontalScale, 1, AvilaMaps.STARTING_Y);
+    }
+
+    @Benchmark
+    public int[] chunkGridPointwise() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        int startX = this.chunks[i];
+        int startZ = this.chunks[i + 1];
+        for (int dz = 0; dz < 16; dz++) {
+            for (int dx = 0; dx < 16; dx++) {
+                this.grid[dz << 4 | dx] = (int) this.heightmap.getElevation(startX + dx, startZ + dz, this.horizontalScale, 1, AvilaMaps.STARTING_Y);
+            }
+        }
+        return this.grid;
+    }
+
+    @Benchmark
+    public int[] chunkGridBatch() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        this.heightmap.sampleElevations(this.chunks[i], this.chunks[i + 1], 16, 16, 1, this.horizontalScale, 1, AvilaMaps.STARTING_Y, Integer.MIN_VALUE, this.grid, 0);
+        return this.grid;
+    }
+
+    @Benchmark
+    public float[] chunkGridBatchFloat() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        this.heightmap.sampleElevations(this.chunks[i], this.chunks[i + 1], 16, 16, 1, this.horizontalScale, 1, AvilaMaps.STARTING_Y, Integer.MIN_VALUE, this.floatGrid, 0);
+        return this.floatGrid;
+    }
+}
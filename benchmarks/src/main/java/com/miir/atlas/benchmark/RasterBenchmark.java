@@ -0,0 +1,83 @@
+package com.miir.atlas.benchmark;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * plain int rasters against the compressed tile rasters of {@code compress_maps}. the memory each map takes is
+ * logged once per trial, so the sampling cost below can be weighed against it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RasterBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    @Param({"GRAYSCALE", "COLOR"})
+    public NamespacedMapImage.Type type;
+
+    private NamespacedMapImage map;
+    private int[] pixels;
+    private int[] chunks;
+    private int next;
+    private final int[] grid = new int[256];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        AtlasConfig.compressMaps = this.compressed;
+        this.map = AvilaMaps.load(this.type == NamespacedMapImage.Type.COLOR ? AvilaMaps.BIOMES : AvilaMaps.HEIGHTMAP, this.type);
+        Atlas.LOGGER.info(String.format(Locale.ROOT, "%s %s raster: %,d bytes", this.compressed ? "compressed" : "plain", this.type, this.map.getRaster().getMemoryFootprint()));
+        int[] points = AvilaMaps.randomPoints(this.map, 1, POINTS, 42);
+        this.pixels = new int[points.length];
+        for (int i = 0; i < points.length; i += 2) {
+            this.pixels[i] = points[i] + this.map.getWidth() / 2;
+            this.pixels[i + 1] = points[i + 1] + this.map.getHeight() / 2;
+        }
+        this.chunks = AvilaMaps.randomPoints(this.map, 1, POINTS, 43);
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] &= ~0xF;
+        }
+    }
+
+    /**
+     * a single pixel read, as done by the biome source
+     */
+    @Benchmark
+    public int pixel() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        return this.map.getPixel(this.pixels[i], this.pixels[i + 1]);
+    }
+
+    /**
+     * a chunk's worth of interpolated samples, as done by populateNoise
+     */
+    @Benchmark
+    public int[] chunkGrid() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        this.map.sampleElevations(this.chunks[i], this.chunks[i + 1], 16, 16, 1, 1, 1, AvilaMaps.STARTING_Y, Integer.MIN_VALUE, this.grid, 0);
+        return this.grid;
+    }
+}
@@ -0,0 +1,91 @@
+package com.miir.atlas.world.gen.biome.source;
+
+import com.miir.atlas.benchmark.AvilaMaps;
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import com.miir.atlas.world.gen.biome.BiomeEntry;
+import net.minecraft.registry.BuiltinRegistries;
+import net.minecraft.registry.RegistryEntryLookup;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AtlasBiomeSource#getBiome} on the avila biome map. {@code exact} uses the map's own colors, so every lookup
+ * hits the color table; {@code nearest} shifts every configured color slightly, so every lookup falls back to the
+ * closest-color search. lives in the biome source's package to reach its constructor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BiomeLookupBenchmark {
+    private static final int POINTS = 4096;
+    @SuppressWarnings("unchecked")
+    private static final RegistryKey<Biome>[] BIOMES = new RegistryKey[]{
+            BiomeKeys.PLAINS, BiomeKeys.BEACH, BiomeKeys.JUNGLE, BiomeKeys.SPARSE_JUNGLE, BiomeKeys.DESERT,
+            BiomeKeys.JAGGED_PEAKS, BiomeKeys.MEADOW, BiomeKeys.GROVE, BiomeKeys.OLD_GROWTH_SPRUCE_TAIGA,
+            BiomeKeys.STONY_SHORE, BiomeKeys.OCEAN, BiomeKeys.WARM_OCEAN, BiomeKeys.COLD_OCEAN, BiomeKeys.DEEP_OCEAN,
+            BiomeKeys.STONY_PEAKS, BiomeKeys.TAIGA
+    };
+
+    private AtlasBiomeSource exact;
+    private AtlasBiomeSource nearest;
+    private int[] points;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        AvilaMaps.bootstrap();
+        NamespacedMapImage heightmap = AvilaMaps.load(AvilaMaps.HEIGHTMAP, NamespacedMapImage.Type.GRAYSCALE);
+        AvilaMaps.load(AvilaMaps.BIOMES, NamespacedMapImage.Type.COLOR);
+        RegistryEntryLookup<Biome> biomes = BuiltinRegistries.createWrapperLookup().getWrapperOrThrow(RegistryKeys.BIOME);
+        this.exact = create(biomes, 0);
+        this.nearest = create(biomes, 0x010101);
+        // biome coordinates, a quarter of the block coordinates
+        this.points = AvilaMaps.randomPoints(heightmap, 1, POINTS, 42);
+        for (int i = 0; i < this.points.length; i++) {
+            this.points[i] >>= 2;
+        }
+    }
+
+    private static AtlasBiomeSource create(RegistryEntryLookup<Biome> biomes, int colorOffset) {
+        List<BiomeEntry> entries = new ArrayList<>();
+        for (int i = 0; i < BIOMES.length; i++) {
+            entries.add(new BiomeEntry(Optional.of(biomes.getOrThrow(BIOMES[i])), Optional.empty(), AvilaMaps.BIOME_COLORS[i] ^ colorOffset));
+        }
+        return new AtlasBiomeSource(AvilaMaps.BIOMES.toString(), entries, Optional.empty(), Optional.empty(), RegistryEntry.of(AvilaMaps.mapInfo(1)), Integer.MAX_VALUE, 1, Optional.empty());
+    }
+
+    @Benchmark
+    public RegistryEntry<Biome> exact() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        return this.exact.getBiome(this.points[i], 16, this.points[i + 1], null);
+    }
+
+    @Benchmark
+    public RegistryEntry<Biome> nearest() {
+        int i = (this.next++ & (POINTS - 1)) << 1;
+        return this.nearest.getBiome(this.points[i], 16, this.points[i + 1], null);
+    }
+}
@@ -1,32 +1,44 @@
 package com.miir.atlas;
 
+import com.google.common.collect.Iterables;
+import com.miir.atlas.command.AtlasCommand;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.harness.GenerationHarness;
+import com.miir.atlas.pregen.Pregenerator;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.world.gen.AtlasDensityFunctions;
 import com.miir.atlas.world.gen.AtlasMapInfo;
 import com.miir.atlas.world.gen.AtlasPredicates;
 import com.miir.atlas.world.gen.NamespacedMapImage;
+import com.miir.atlas.world.gen.RasterStore;
 import com.miir.atlas.world.gen.biome.source.AtlasBiomeSource;
 import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import com.miir.atlas.world.gen.chunk.NoiseConfigs;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.registry.DynamicRegistries;
 import net.minecraft.registry.BuiltinRegistries;
 import net.minecraft.registry.Registries;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.RegistryKey;
+import net.minecraft.resource.ResourceManager;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Identifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Atlas implements ModInitializer {
     public static final String MOD_ID = "atlas";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
-    public static final int GEN_RADIUS = 8192;
     public static MinecraftServer SERVER;
     public static final RegistryKey<Registry<AtlasMapInfo>> ATLAS_INFO = RegistryKey.ofRegistry(Atlas.id("worldgen/atlas_map_info"));
-    public static final Map<Identifier, NamespacedMapImage> GRAYSCALE_MAPS = new HashMap<>();
-    public static final Map<Identifier, NamespacedMapImage> COLOR_MAPS = new HashMap<>();
+    // looked up from worldgen threads
+    public static final Map<Identifier, NamespacedMapImage> GRAYSCALE_MAPS = new ConcurrentHashMap<>();
+    public static final Map<Identifier, NamespacedMapImage> COLOR_MAPS = new ConcurrentHashMap<>();
 
     public static Identifier id(String path) {
         return Identifier.of(MOD_ID, path);
@@ -34,12 +46,43 @@ public class Atlas implements ModInitializer {
 
     @Override
     public void onInitialize() {
+        AtlasConfig.load();
         DynamicRegistries.register(ATLAS_INFO, AtlasMapInfo.CODEC);
         BuiltinRegistries.REGISTRY_BUILDER.addRegistry(ATLAS_INFO, AtlasMapInfo::bootstrap);
 
         Registry.register(Registries.CHUNK_GENERATOR, id(MOD_ID), AtlasChunkGenerator.CODEC);
         Registry.register(Registries.BIOME_SOURCE, id(MOD_ID), AtlasBiomeSource.CODEC);
         AtlasPredicates.register();
+        AtlasDensityFunctions.register();
+        GenerationHarness.register();
+        Pregenerator.register();
+        AtlasCommand.register();
+        AtlasStats.registerMBeans();
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> {
+            if (success) reloadMaps(resourceManager);
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> NoiseConfigs.clear());
+    }
+
+    /**
+     * re-reads every loaded map from the new datapacks after a /reload. maps whose files didn't change are skipped.
+     */
+    public static void reloadMaps(ResourceManager manager) {
+        long start = System.nanoTime();
+        int reloaded = 0;
+        for (NamespacedMapImage map : Iterables.concat(GRAYSCALE_MAPS.values(), COLOR_MAPS.values())) {
+            try {
+                int tiles = map.reload(manager);
+                if (tiles > 0) {
+                    reloaded++;
+                    LOGGER.info("reloaded " + tiles + " changed tiles of map " + map.getPath());
+                }
+            } catch (IOException e) {
+                LOGGER.error("could not reload map " + map.getPath() + ", keeping the old one!", e);
+            }
+        }
+        RasterStore.finishLoading();
+        LOGGER.info("checked atlas maps for changes in " + (System.nanoTime() - start) / 1000000 + " ms, " + reloaded + " reloaded");
     }
 
     public static NamespacedMapImage getOrCreateMap(String path, NamespacedMapImage.Type type) {
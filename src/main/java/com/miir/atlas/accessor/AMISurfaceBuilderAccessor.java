@@ -1,6 +1,7 @@
 package com.miir.atlas.accessor;
 
 import com.miir.atlas.world.gen.AtlasMapInfo;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.world.biome.Biome;
@@ -10,8 +11,9 @@ import net.minecraft.world.gen.HeightContext;
 import net.minecraft.world.gen.chunk.ChunkNoiseSampler;
 import net.minecraft.world.gen.noise.NoiseConfig;
 import net.minecraft.world.gen.surfacebuilder.MaterialRules;
+import org.jetbrains.annotations.Nullable;
 
 public interface AMISurfaceBuilderAccessor {
-    void buildSurface(NoiseConfig noiseConfig, BiomeAccess biomeAccess, Registry<Biome> biomeRegistry, boolean useLegacyRandom, HeightContext heightContext, final Chunk chunk, ChunkNoiseSampler chunkNoiseSampler, MaterialRules.MaterialRule materialRule, RegistryEntry<AtlasMapInfo> ami);
+    void buildSurface(NoiseConfig noiseConfig, BiomeAccess biomeAccess, Registry<Biome> biomeRegistry, boolean useLegacyRandom, HeightContext heightContext, final Chunk chunk, ChunkNoiseSampler chunkNoiseSampler, MaterialRules.MaterialRule materialRule, RegistryEntry<AtlasMapInfo> ami, @Nullable CaveLayers caveLayers);
 
 }
@@ -1,9 +1,13 @@
 package com.miir.atlas.accessor;
 
 import com.miir.atlas.world.gen.AtlasMapInfo;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import net.minecraft.registry.entry.RegistryEntry;
+import org.jetbrains.annotations.Nullable;
 
 public interface MapInfoAccessor {
     RegistryEntry<AtlasMapInfo> atlas_getAMI();
     void atlas_setAMI(RegistryEntry<AtlasMapInfo> ami);
+    @Nullable CaveLayers atlas_getCaveLayers();
+    void atlas_setCaveLayers(@Nullable CaveLayers caveLayers);
 }
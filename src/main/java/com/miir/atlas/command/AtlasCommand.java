@@ -0,0 +1,325 @@
+package com.miir.atlas.command;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.render.PreviewRenderer;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.stats.HitCounter;
+import com.miir.atlas.stats.MapStats;
+import com.miir.atlas.stats.StageTimer;
+import com.miir.atlas.world.gen.AtlasExecutor;
+import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import com.miir.atlas.world.gen.chunk.ChunkStubs;
+import com.miir.atlas.world.gen.raster.MapRaster;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.gen.noise.NoiseConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * the {@code /atlas} command.
+ */
+public class AtlasCommand {
+    private static final AtomicBoolean RENDERING = new AtomicBoolean();
+    private static final AtomicBoolean VERIFYING = new AtomicBoolean();
+    private static final int VERIFY_CHUNKS_IN_FLIGHT = 16;
+    private static final ChunkTicketType<ChunkPos> VERIFY_TICKET = ChunkTicketType.create("atlas_verify_chunks", Comparator.comparingLong(ChunkPos::toLong));
+    // preview tiles share the executor with chunk generation, so only a few are queued at a time
+    private static final int PREVIEW_TILES_IN_FLIGHT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> register(dispatcher));
+    }
+
+    private static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(CommandManager.literal("atlas")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.literal("stats")
+                        .executes(AtlasCommand::printStats)
+                        .then(CommandManager.literal("reset")
+                                .executes(AtlasCommand::resetStats)))
+                .then(CommandManager.literal("verify_chunks")
+                        .executes(context -> verifyChunks(context, 2))
+                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(0, 16))
+                                .executes(context -> verifyChunks(context, IntegerArgumentType.getInteger(context, "radius")))))
+                .then(CommandManager.literal("render_preview")
+                        .executes(AtlasCommand::renderPreview)));
+    }
+
+    private static int printStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        for (StageTimer stage : AtlasStats.STAGES) {
+            if (stage.getCount() == 0) continue;
+            send(source, String.format(Locale.ROOT, "%s: %d calls, mean %.3f ms, p99 < %.3f ms, %.1f s total",
+                    stage.getName(), stage.getCount(), stage.getMeanMillis(), stage.getP99Millis(), stage.getTotalSeconds()));
+        }
+        for (HitCounter lookup : AtlasStats.LOOKUPS) {
+            if (lookup.getHits() + lookup.getMisses() == 0) continue;
+            send(source, String.format(Locale.ROOT, "%s: %d hits, %d misses (%.1f%% hit rate)",
+                    lookup.getName(), lookup.getHits(), lookup.getMisses(), lookup.getHitRate() * 100));
+        }
+        long totalBytes = 0;
+        // maps loaded from the same source share a raster, which only counts once
+        Set<MapRaster> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MapStats map : AtlasStats.getMaps()) {
+            boolean shared = map.getRaster() != null && !counted.add(map.getRaster());
+            if (!shared) totalBytes += map.getMemoryBytes();
+            send(source, String.format(Locale.ROOT, "map %s (%s): %dx%d, %.1f MiB%s, loaded in %.0f ms",
+                    map.getPath(), map.getType(), map.getWidth(), map.getHeight(), map.getMemoryBytes() / 1048576.0, shared ? " (shared)" : "", map.getLoadMillis()));
+        }
+        send(source, String.format(Locale.ROOT, "maps total: %.1f MiB", totalBytes / 1048576.0));
+        AtlasExecutor executor = AtlasExecutor.get();
+        send(source, String.format(Locale.ROOT, "executor (%s): %d queued, %d active",
+                executor.getDescription(), executor.getQueueDepth(), executor.getActiveTasks()));
+        return 1;
+    }
+
+    private static int resetStats(CommandContext<ServerCommandSource> context) {
+        AtlasStats.reset();
+        send(context.getSource(), "reset atlas stats");
+        return 1;
+    }
+
+    /**
+     * serializes every chunk in a square around the source, stubs it, regenerates it from the stub and checks that
+     * the result is byte-for-byte the chunk as it would be saved without stubs. works whether or not stub_chunks is on.
+     * chunks are loaded a few at a time and checked on the atlas executor, the result is reported when all are done.
+     */
+    private static int verifyChunks(CommandContext<ServerCommandSource> context, int radius) {
+        ServerCommandSource source = context.getSource();
+        ServerWorld world = source.getWorld();
+        if (!(world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator generator)) {
+            source.sendError(Text.literal("this dimension isn't generated by atlas"));
+            return 0;
+        }
+        if (!VERIFYING.compareAndSet(false, true)) {
+            source.sendError(Text.literal("already verifying chunks"));
+            return 0;
+        }
+        boolean started = false;
+        try {
+            ChunkPos center = new ChunkPos(BlockPos.ofFloored(source.getPosition()));
+            List<ChunkPos> chunks = new ArrayList<>();
+            for (int x = center.x - radius; x <= center.x + radius; x++) {
+                for (int z = center.z - radius; z <= center.z + radius; z++) {
+                    chunks.add(new ChunkPos(x, z));
+                }
+            }
+            send(source, "verifying " + chunks.size() + " chunks...");
+            new ChunkVerification(source, world, generator, chunks).start();
+            started = true;
+        } finally {
+            if (!started) VERIFYING.set(false);
+        }
+        return 1;
+    }
+
+    /**
+     * one run of {@code /atlas verify_chunks}. chunks are loaded and serialized on the server thread, at most
+     * {@link #VERIFY_CHUNKS_IN_FLIGHT} at a time, then stubbed and regenerated on the atlas executor, which reports
+     * back to the server thread. every field is only touched on the server thread.
+     */
+    private static final class ChunkVerification {
+        private final ServerCommandSource source;
+        private final ServerWorld world;
+        private final AtlasChunkGenerator generator;
+        private final NoiseConfig noiseConfig;
+        private final List<ChunkPos> chunks;
+        private final long start = System.nanoTime();
+        private int next;
+        private int inFlight;
+        private int verified;
+        private int mismatches;
+        private int failures;
+        private int stubbedSections;
+        private long fullBytes;
+        private long stubBytes;
+
+        ChunkVerification(ServerCommandSource source, ServerWorld world, AtlasChunkGenerator generator, List<ChunkPos> chunks) {
+            this.source = source;
+            this.world = world;
+            this.generator = generator;
+            this.noiseConfig = world.getChunkManager().getNoiseConfig();
+            this.chunks = chunks;
+        }
+
+        void start() {
+            this.request();
+        }
+
+        private void request() {
+            ServerChunkManager chunkManager = this.world.getChunkManager();
+            while (this.inFlight < VERIFY_CHUNKS_IN_FLIGHT && this.next < this.chunks.size()) {
+                ChunkPos pos = this.chunks.get(this.next++);
+                this.inFlight++;
+                chunkManager.addTicket(VERIFY_TICKET, pos, 0, pos);
+                chunkManager.getChunkFutureSyncOnMainThread(pos.x, pos.z, ChunkStatus.FULL, true).whenCompleteAsync((chunk, throwable) -> {
+                    NbtCompound saved = null;
+                    try {
+                        if (throwable == null && chunk.isPresent()) {
+                            saved = ChunkSerializer.serialize(this.world, chunk.orElse(null));
+                        }
+                    } catch (RuntimeException e) {
+                        throwable = e;
+                    } finally {
+                        chunkManager.removeTicket(VERIFY_TICKET, pos, 0, pos);
+                    }
+                    if (saved == null) {
+                        Atlas.LOGGER.error("could not load chunk " + pos + " to verify it!", throwable);
+                        this.finish(null);
+                        return;
+                    }
+                    NbtCompound nbt = saved;
+                    try {
+                        AtlasExecutor.get().execute("verify_chunks", () -> {
+                            Result result = this.verify(pos, nbt);
+                            this.world.getServer().execute(() -> this.finish(result));
+                        });
+                    } catch (RejectedExecutionException e) {
+                        Atlas.LOGGER.error("could not verify chunk " + pos + "!", e);
+                        this.finish(null);
+                    }
+                }, this.world.getServer());
+            }
+        }
+
+        /**
+         * @return how the chunk compares to its stub, or null if it couldn't be checked
+         */
+        private Result verify(ChunkPos pos, NbtCompound saved) {
+            try {
+                byte[] expected = write(saved);
+                NbtCompound stub = saved.copy();
+                int sections = ChunkStubs.strip(this.world, this.generator, this.noiseConfig, stub);
+                int fullSize = compressedSize(saved);
+                int stubSize = compressedSize(stub);
+                byte[] regenerated = write(ChunkStubs.expand(this.world, this.generator, this.noiseConfig, stub));
+                boolean matches = Arrays.equals(expected, regenerated);
+                if (!matches) {
+                    Atlas.LOGGER.warn("chunk " + pos + " does not regenerate byte-for-byte from its stub!");
+                }
+                return new Result(matches, sections, fullSize, stubSize);
+            } catch (Throwable t) {
+                Atlas.LOGGER.error("could not verify chunk " + pos + "!", t);
+                return null;
+            }
+        }
+
+        private void finish(@Nullable Result result) {
+            this.inFlight--;
+            if (result == null) {
+                this.failures++;
+            } else {
+                this.verified++;
+                if (!result.matches()) this.mismatches++;
+                this.stubbedSections += result.stubbedSections();
+                this.fullBytes += result.fullBytes();
+                this.stubBytes += result.stubBytes();
+            }
+            if (this.next < this.chunks.size()) {
+                this.request();
+            } else if (this.inFlight == 0) {
+                VERIFYING.set(false);
+                send(this.source, String.format(Locale.ROOT, "%d chunks verified in %.1f s, %d mismatched. %d sections stubbed, %.1f KiB -> %.1f KiB compressed (%.1fx)",
+                        this.verified, (System.nanoTime() - this.start) / 1e9, this.mismatches, this.stubbedSections, this.fullBytes / 1024.0, this.stubBytes / 1024.0,
+                        this.stubBytes == 0 ? 0 : (double) this.fullBytes / this.stubBytes));
+                if (this.failures > 0) {
+                    this.source.sendError(Text.literal(this.failures + " chunks could not be verified, see the log"));
+                }
+            }
+        }
+
+        private record Result(boolean matches, int stubbedSections, int fullBytes, int stubBytes) {
+        }
+    }
+
+    /**
+     * renders preview tiles of the source's dimension into {@code <world>/atlas_preview/<namespace>/<path>} in the
+     * background, see {@link PreviewRenderer}
+     */
+    private static int renderPreview(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        ServerWorld world = source.getWorld();
+        if (!(world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator generator)) {
+            source.sendError(Text.literal("this dimension isn't generated by atlas"));
+            return 0;
+        }
+        if (!RENDERING.compareAndSet(false, true)) {
+            source.sendError(Text.literal("already rendering a preview"));
+            return 0;
+        }
+        // cleared when the render finishes, or right away if it never gets started
+        boolean started = false;
+        try {
+            MinecraftServer server = source.getServer();
+            Identifier dimension = world.getRegistryKey().getValue();
+            Path directory = server.getSavePath(WorldSavePath.ROOT).resolve("atlas_preview").resolve(dimension.getNamespace()).resolve(dimension.getPath());
+            PreviewRenderer renderer = new PreviewRenderer(generator, directory);
+            AtlasExecutor executor = AtlasExecutor.get();
+            long start = System.nanoTime();
+            send(source, "rendering " + (renderer.getMaxLevel() + 1) + " preview levels of " + dimension + "...");
+            renderer.renderAll(command -> executor.execute("render_preview", command), PREVIEW_TILES_IN_FLIGHT).whenComplete((tiles, throwable) -> {
+                RENDERING.set(false);
+                server.execute(() -> {
+                    if (throwable != null) {
+                        Atlas.LOGGER.error("could not render the preview of " + dimension, throwable);
+                        source.sendError(Text.literal("could not render the preview, see the log"));
+                    } else {
+                        send(source, String.format(Locale.ROOT, "wrote %d preview tiles to %s in %.1f s", tiles, directory, (System.nanoTime() - start) / 1e9));
+                    }
+                });
+            });
+            started = true;
+        } finally {
+            if (!started) RENDERING.set(false);
+        }
+        return 1;
+    }
+
+    private static byte[] write(NbtCompound nbt) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NbtIo.write(nbt, new DataOutputStream(out));
+        return out.toByteArray();
+    }
+
+    private static int compressedSize(NbtCompound nbt) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(nbt, out);
+        return out.size();
+    }
+
+    private static void send(ServerCommandSource source, String message) {
+        source.sendFeedback(() -> Text.literal(message), false);
+    }
+}
@@ -0,0 +1,109 @@
+package com.miir.atlas.config;
+
+import com.miir.atlas.Atlas;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * server-side tuning options, read from {@code config/atlas.properties}. missing keys fall back to their defaults and
+ * the file is rewritten with every known key so new options show up after an update.
+ */
+public class AtlasConfig {
+    private static final String FILE_NAME = "atlas.properties";
+
+    /**
+     * where atlas runs its async generation work. {@code vanilla} shares minecraft's main worker pool.
+     */
+    public static ExecutorMode executor = ExecutorMode.VANILLA;
+    /**
+     * thread count for the {@code work_stealing} executor. ignored by the other modes.
+     */
+    public static int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    /**
+     * whether png maps are kept in compressed tiles instead of one int per pixel. saves a lot of memory on maps with
+     * large uniform areas, at some cost to sampling speed.
+     */
+    public static boolean compressMaps = false;
+    /**
+     * whether sections of atlas chunks that still hold untouched terrain are saved as a marker and regenerated on load.
+     * trades generation time on save and load for smaller region files.
+     */
+    public static boolean stubChunks = false;
+    /**
+     * whether each chunk's noise is filled by several threads of the atlas executor at once. lowers the time a single
+     * chunk takes on machines with idle cores, at some cost to total throughput when many chunks are in flight.
+     */
+    public static boolean parallelNoise = false;
+
+    public enum ExecutorMode {
+        VANILLA,
+        WORK_STEALING,
+        VIRTUAL
+    }
+
+    public static void load() {
+        Path path = getPath();
+        Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                Atlas.LOGGER.error("could not read atlas config at " + path + ", using defaults!", e);
+            }
+        }
+        executor = get(properties, "executor", executor, s -> ExecutorMode.valueOf(s.toUpperCase(Locale.ROOT)));
+        parallelism = Math.max(1, get(properties, "parallelism", parallelism, Integer::parseInt));
+        compressMaps = get(properties, "compress_maps", compressMaps, AtlasConfig::parseBoolean);
+        stubChunks = get(properties, "stub_chunks", stubChunks, AtlasConfig::parseBoolean);
+        parallelNoise = get(properties, "parallel_noise", parallelNoise, AtlasConfig::parseBoolean);
+        save();
+    }
+
+    public static void save() {
+        Path path = getPath();
+        Properties properties = new Properties();
+        properties.setProperty("executor", executor.name().toLowerCase(Locale.ROOT));
+        properties.setProperty("parallelism", Integer.toString(parallelism));
+        properties.setProperty("compress_maps", Boolean.toString(compressMaps));
+        properties.setProperty("stub_chunks", Boolean.toString(stubChunks));
+        properties.setProperty("parallel_noise", Boolean.toString(parallelNoise));
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                properties.store(writer, "atlas config. executor: vanilla | work_stealing | virtual");
+            }
+        } catch (IOException e) {
+            Atlas.LOGGER.error("could not write atlas config to " + path + "!", e);
+        }
+    }
+
+    // looked up when the file is read, so the options themselves can be set outside of fabric, e.g. in benchmarks
+    private static Path getPath() {
+        return FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) return true;
+        if (value.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException(value);
+    }
+
+    private static <T> T get(Properties properties, String key, T fallback, Function<String, T> parser) {
+        String value = properties.getProperty(key);
+        if (value == null) return fallback;
+        try {
+            return parser.apply(value.trim());
+        } catch (RuntimeException e) {
+            Atlas.LOGGER.warn("invalid value '" + value + "' for atlas config option " + key + ", using " + fallback);
+            return fallback;
+        }
+    }
+}
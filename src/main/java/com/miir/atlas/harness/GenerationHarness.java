@@ -0,0 +1,197 @@
+package com.miir.atlas.harness;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.miir.atlas.Atlas;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.stats.StageTimer;
+import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.block.Block;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.ReadableContainer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * headless generation benchmark. when the server is started with {@code -Datlas.harness=<dimension>}, it generates a
+ * square of chunks in that dimension right after startup, writes the per-stage timings and a hash of every generated
+ * block and biome to a json report, and shuts the server down again. two runs on fresh worlds with the same seed
+ * should report identical hashes; anything else means a change altered the generated terrain.
+ * <p>
+ * options (all system properties):
+ * <ul>
+ *     <li>{@code atlas.harness}: the dimension to generate, e.g. {@code avila:avila}</li>
+ *     <li>{@code atlas.harness.radius}: radius of the square in chunks, default 8</li>
+ *     <li>{@code atlas.harness.center}: center chunk as {@code x,z}, default {@code 0,0}</li>
+ *     <li>{@code atlas.harness.status}: status to generate to, default {@code carvers}, the last status atlas
+ *     generates itself. later statuses include feature placement, whose output depends on generation order</li>
+ *     <li>{@code atlas.harness.output}: where to write the report, default {@code atlas-harness.json}</li>
+ * </ul>
+ */
+public class GenerationHarness {
+    private final RegistryKey<World> dimension;
+    private final int radius;
+    private final int centerX;
+    private final int centerZ;
+    private final ChunkStatus status;
+    private final Path output;
+
+    private GenerationHarness(RegistryKey<World> dimension, int radius, int centerX, int centerZ, ChunkStatus status, Path output) {
+        this.dimension = dimension;
+        this.radius = radius;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.status = status;
+        this.output = output;
+    }
+
+    public static void register() {
+        String dimension = System.getProperty("atlas.harness");
+        if (dimension == null) return;
+        String[] center = System.getProperty("atlas.harness.center", "0,0").split(",");
+        GenerationHarness harness = new GenerationHarness(
+                RegistryKey.of(RegistryKeys.WORLD, Identifier.of(dimension)),
+                Integer.getInteger("atlas.harness.radius", 8),
+                Integer.parseInt(center[0].trim()),
+                Integer.parseInt(center[1].trim()),
+                ChunkStatus.byId(System.getProperty("atlas.harness.status", "carvers")),
+                Path.of(System.getProperty("atlas.harness.output", "atlas-harness.json"))
+        );
+        ServerLifecycleEvents.SERVER_STARTED.register(harness::run);
+    }
+
+    private void run(MinecraftServer server) {
+        try {
+            ServerWorld world = server.getWorld(this.dimension);
+            if (world == null) {
+                Atlas.LOGGER.error("atlas harness: no dimension named " + this.dimension.getValue() + "!");
+            } else if (!(world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator)) {
+                Atlas.LOGGER.error("atlas harness: " + this.dimension.getValue() + " does not use the atlas chunk generator!");
+            } else {
+                this.generate(world);
+            }
+        } catch (Exception e) {
+            Atlas.LOGGER.error("atlas harness failed!", e);
+        } finally {
+            server.stop(false);
+        }
+    }
+
+    private void generate(ServerWorld world) throws IOException, NoSuchAlgorithmException {
+        int side = 2 * this.radius + 1;
+        Atlas.LOGGER.info("atlas harness: generating " + side + "x" + side + " chunks around " + this.centerX + "," + this.centerZ + " in " + this.dimension.getValue() + " to status " + this.status);
+        AtlasStats.reset();
+        long start = System.nanoTime();
+        for (int x = this.centerX - this.radius; x <= this.centerX + this.radius; x++) {
+            for (int z = this.centerZ - this.radius; z <= this.centerZ + this.radius; z++) {
+                world.getChunkManager().getChunk(x, z, this.status, true);
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        JsonObject report = new JsonObject();
+        report.addProperty("dimension", this.dimension.getValue().toString());
+        report.addProperty("seed", world.getSeed());
+        report.addProperty("status", this.status.toString());
+        report.addProperty("chunks", side * side);
+        report.addProperty("wall_seconds", wallNanos / 1e9);
+        report.addProperty("chunks_per_second", side * side * 1e9 / wallNanos);
+        JsonObject stages = new JsonObject();
+        for (StageTimer stage : AtlasStats.CHUNK_STAGES) {
+            JsonObject json = timerJson(stage);
+            json.addProperty("chunks_per_second", stage.getChunksPerSecond());
+            stages.add(stage.getName(), json);
+            Atlas.LOGGER.info(String.format(Locale.ROOT, "atlas harness: %s ran %d times, %.1f chunks/s per thread, mean %.3f ms", stage.getName(), stage.getCount(), stage.getChunksPerSecond(), stage.getMeanMillis()));
+        }
+        report.add("stages", stages);
+        JsonObject timers = new JsonObject();
+        for (StageTimer timer : AtlasStats.OTHER_TIMERS) {
+            timers.add(timer.getName(), timerJson(timer));
+            Atlas.LOGGER.info(String.format(Locale.ROOT, "atlas harness: %s ran %d times, mean %.3f ms, %.1f s total", timer.getName(), timer.getCount(), timer.getMeanMillis(), timer.getTotalSeconds()));
+        }
+        report.add("timers", timers);
+        if (AtlasStats.POPULATE_NOISE.getCount() == 0) {
+            Atlas.LOGGER.warn("atlas harness: no chunks were generated, they were probably loaded from disk. use a fresh world!");
+        }
+
+        MessageDigest total = MessageDigest.getInstance("SHA-256");
+        JsonArray chunks = new JsonArray();
+        Map<RegistryEntry<Biome>, byte[]> biomeIds = new IdentityHashMap<>();
+        for (int x = this.centerX - this.radius; x <= this.centerX + this.radius; x++) {
+            for (int z = this.centerZ - this.radius; z <= this.centerZ + this.radius; z++) {
+                byte[] hash = hash(world.getChunkManager().getChunk(x, z, this.status, false), biomeIds);
+                total.update(hash);
+                JsonObject json = new JsonObject();
+                json.addProperty("x", x);
+                json.addProperty("z", z);
+                json.addProperty("hash", HexFormat.of().formatHex(hash));
+                chunks.add(json);
+            }
+        }
+        String hash = HexFormat.of().formatHex(total.digest());
+        report.addProperty("hash", hash);
+        report.add("chunk_hashes", chunks);
+        try (Writer writer = Files.newBufferedWriter(this.output)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        }
+        Atlas.LOGGER.info(String.format(Locale.ROOT, "atlas harness: %d chunks in %.2f s (%.1f chunks/s), content hash %s, report written to %s", side * side, wallNanos / 1e9, side * side * 1e9 / wallNanos, hash, this.output.toAbsolutePath()));
+    }
+
+    private static JsonObject timerJson(StageTimer timer) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", timer.getCount());
+        json.addProperty("total_seconds", timer.getTotalSeconds());
+        json.addProperty("mean_ms", timer.getMeanMillis());
+        json.addProperty("p99_ms", timer.getP99Millis());
+        return json;
+    }
+
+    private static byte[] hash(Chunk chunk, Map<RegistryEntry<Biome>, byte[]> biomeIds) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        if (chunk == null) return digest.digest();
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 16 * 16 * Integer.BYTES);
+        for (ChunkSection section : chunk.getSectionArray()) {
+            buffer.clear();
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        buffer.putInt(Block.getRawIdFromState(section.getBlockState(x, y, z)));
+                    }
+                }
+            }
+            digest.update(buffer.array(), 0, buffer.position());
+            ReadableContainer<RegistryEntry<Biome>> biomes = section.getBiomeContainer();
+            for (int y = 0; y < 4; y++) {
+                for (int z = 0; z < 4; z++) {
+                    for (int x = 0; x < 4; x++) {
+                        digest.update(biomeIds.computeIfAbsent(biomes.get(x, y, z), entry -> entry.getIdAsString().getBytes(StandardCharsets.UTF_8)));
+                    }
+                }
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,91 @@
+package com.miir.atlas.mixin;
+
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.light.ChunkSkyLight;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.Map;
+
+/**
+ * seeds the sky light surface of every column of an atlas chunk from the chunk's world surface heightmap, which atlas
+ * fills straight from the map in {@code populateNoise} and which is kept up to date through features. vanilla scans
+ * every column down from the highest non-empty section of the whole chunk, so on steep maps the valley columns walk
+ * through every block of the mountain's height first. everything above the heightmap is air and can't block light, so
+ * starting each column at its own surface gives exactly the same result.
+ * <p>
+ * chunks of other generators, and every chunk on the client, are left to vanilla. off until it has been measured to
+ * pay for itself: start the server with {@code -Datlas.sky_light_from_heightmap=true} to turn it on. the time spent
+ * either way in atlas dimensions is recorded as {@code sky_light_surface}, so running the generation harness with and
+ * without it compares the two, and the harness's content hash has to be the same for both.
+ */
+@Mixin(ChunkSkyLight.class)
+public abstract class ChunkSkyLightMixin {
+    @Unique
+    private static final boolean FROM_HEIGHTMAP = Boolean.parseBoolean(System.getProperty("atlas.sky_light_from_heightmap", "false"));
+
+    @Shadow @Final private int minY;
+
+    @Shadow protected abstract int calculateSurfaceY(Chunk chunk, int topSectionIndex, int localX, int localZ);
+
+    @Shadow protected abstract void set(int index, int y);
+
+    @Shadow
+    private static int getPackedIndex(int localX, int localZ) {
+        throw new AssertionError();
+    }
+
+    // start of vanilla's scan of an atlas chunk, when it isn't replaced
+    @Unique
+    private boolean atlas_timingVanilla;
+    @Unique
+    private long atlas_vanillaStart;
+
+    @Inject(method = "refreshSurfaceY", at = @At("HEAD"), cancellable = true)
+    private void atlas_refreshFromHeightmap(Chunk chunk, CallbackInfo ci) {
+        if (!(chunk.getHeightLimitView() instanceof ServerWorld world) || !(world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator)) return;
+        long start = AtlasStats.SKY_LIGHT_SURFACE.start();
+        int top = chunk.getHighestNonEmptySection();
+        Heightmap surface = FROM_HEIGHTMAP && top != -1 ? atlas_getWorldSurface(chunk) : null;
+        if (surface == null) {
+            this.atlas_timingVanilla = true;
+            this.atlas_vanillaStart = start;
+            return;
+        }
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                // the section of the highest non-air block, or -1 for an empty column
+                int section = Math.min(top, chunk.getSectionIndex(surface.get(x, z) - 1));
+                int y = section < 0 ? this.minY : this.calculateSurfaceY(chunk, section, x, z);
+                this.set(getPackedIndex(x, z), Math.max(y, this.minY));
+            }
+        }
+        AtlasStats.SKY_LIGHT_SURFACE.stop(start);
+        ci.cancel();
+    }
+
+    @Inject(method = "refreshSurfaceY", at = @At("RETURN"))
+    private void atlas_timeVanilla(Chunk chunk, CallbackInfo ci) {
+        if (!this.atlas_timingVanilla) return;
+        this.atlas_timingVanilla = false;
+        AtlasStats.SKY_LIGHT_SURFACE.stop(this.atlas_vanillaStart);
+    }
+
+    // getHeightmap would create an empty heightmap for chunks that don't track one yet
+    @Unique
+    private static Heightmap atlas_getWorldSurface(Chunk chunk) {
+        for (Map.Entry<Heightmap.Type, Heightmap> entry : chunk.getHeightmaps()) {
+            if (entry.getKey() == Heightmap.Type.WORLD_SURFACE) return entry.getValue();
+        }
+        return null;
+    }
+}
@@ -2,6 +2,7 @@ package com.miir.atlas.mixin;
 
 import com.miir.atlas.accessor.MapInfoAccessor;
 import com.miir.atlas.world.gen.AtlasMapInfo;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.world.gen.surfacebuilder.MaterialRules;
 import org.spongepowered.asm.mixin.Mixin;
@@ -11,6 +12,8 @@ import org.spongepowered.asm.mixin.Unique;
 public class MaterialRuleContextMixin implements MapInfoAccessor {
     @Unique
     private RegistryEntry<AtlasMapInfo> atlas_AMI;
+    @Unique
+    private CaveLayers atlas_caveLayers;
 
     @Override
     public RegistryEntry<AtlasMapInfo> atlas_getAMI() {
@@ -22,5 +25,14 @@ public class MaterialRuleContextMixin implements MapInfoAccessor {
         this.atlas_AMI = ami;
     }
 
+    @Override
+    public CaveLayers atlas_getCaveLayers() {
+        return this.atlas_caveLayers;
+    }
+
+    @Override
+    public void atlas_setCaveLayers(CaveLayers caveLayers) {
+        this.atlas_caveLayers = caveLayers;
+    }
 
 }
@@ -1,6 +1,7 @@
 package com.miir.atlas.mixin;
 
 import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.RasterStore;
 import com.miir.atlas.world.gen.biome.source.AtlasBiomeSource;
 import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
 import net.minecraft.registry.*;
@@ -44,5 +45,7 @@ public abstract class MinecraftServerMixin {
                 }
             }
         }
+        RasterStore.finishLoading();
+        Atlas.LOGGER.info("loaded " + (Atlas.GRAYSCALE_MAPS.size() + Atlas.COLOR_MAPS.size()) + " atlas maps into " + RasterStore.size() + " distinct rasters");
     }
 }
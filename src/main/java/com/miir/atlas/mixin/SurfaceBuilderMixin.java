@@ -3,6 +3,7 @@ package com.miir.atlas.mixin;
 import com.miir.atlas.accessor.AMISurfaceBuilderAccessor;
 import com.miir.atlas.accessor.MapInfoAccessor;
 import com.miir.atlas.world.gen.AtlasMapInfo;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import net.minecraft.block.BlockState;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.entry.RegistryEntry;
@@ -36,7 +37,7 @@ public abstract class SurfaceBuilderMixin implements AMISurfaceBuilderAccessor {
     @Shadow protected abstract void placeIceberg(int minY, Biome biome, BlockColumn column, BlockPos.Mutable mutablePos, int x, int z, int surfaceY);
 
     @Override
-    public void buildSurface(NoiseConfig noiseConfig, BiomeAccess biomeAccess, Registry<Biome> biomeRegistry, boolean useLegacyRandom, HeightContext heightContext, final Chunk chunk, ChunkNoiseSampler chunkNoiseSampler, MaterialRules.MaterialRule materialRule, RegistryEntry<AtlasMapInfo> ami) {
+    public void buildSurface(NoiseConfig noiseConfig, BiomeAccess biomeAccess, Registry<Biome> biomeRegistry, boolean useLegacyRandom, HeightContext heightContext, final Chunk chunk, ChunkNoiseSampler chunkNoiseSampler, MaterialRules.MaterialRule materialRule, RegistryEntry<AtlasMapInfo> ami, CaveLayers caveLayers) {
         final BlockPos.Mutable mutable = new BlockPos.Mutable();
         final ChunkPos chunkPos = chunk.getPos();
         int i = chunkPos.getStartX();
@@ -65,6 +66,7 @@ public abstract class SurfaceBuilderMixin implements AMISurfaceBuilderAccessor {
         };
         MaterialRules.MaterialRuleContext materialRuleContext = MaterialRuleContextAccessor.createMaterialRuleContext((((SurfaceBuilder) (Object) this)), noiseConfig, chunk, chunkNoiseSampler, biomeAccess::getBiome, biomeRegistry, heightContext);
         ((MapInfoAccessor)(Object) materialRuleContext).atlas_setAMI(ami);
+        ((MapInfoAccessor)(Object) materialRuleContext).atlas_setCaveLayers(caveLayers);
         MaterialRules.BlockStateRule blockStateRule = materialRule.apply(materialRuleContext);
         BlockPos.Mutable mutable2 = new BlockPos.Mutable();
         for (int k = 0; k < 16; ++k) {
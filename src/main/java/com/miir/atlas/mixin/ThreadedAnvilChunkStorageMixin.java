@@ -1,12 +1,21 @@
 package com.miir.atlas.mixin;
 
+import com.miir.atlas.Atlas;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.world.gen.AtlasExecutor;
 import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import com.miir.atlas.world.gen.chunk.ChunkStubs;
+import com.miir.atlas.world.gen.chunk.NoiseConfigs;
 import com.mojang.datafixers.DataFixer;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.NbtCompound;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.server.WorldGenerationProgressListener;
 import net.minecraft.server.world.ServerChunkLoadingManager;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.structure.StructureTemplateManager;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.thread.ThreadExecutor;
 import net.minecraft.world.PersistentStateManager;
 import net.minecraft.world.chunk.ChunkProvider;
@@ -18,16 +27,21 @@ import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Mutable;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.ModifyArg;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 /**
  * this mixin ensures that when the world is created, the noise samplers in the density functions get populated with
- * samplers generated from the world seed
+ * samplers generated from the world seed, shared between dimensions with the same settings. it also strips and expands {@link ChunkStubs} around chunk saving and loading, stripping off the server thread
  */
 @Mixin(ServerChunkLoadingManager.class)
 public class ThreadedAnvilChunkStorageMixin {
@@ -36,6 +50,14 @@ public class ThreadedAnvilChunkStorageMixin {
     @Final
     private NoiseConfig noiseConfig;
 
+    @Shadow
+    @Final
+    ServerWorld world;
+
+    // the latest saved nbt of each chunk that is still being stubbed
+    @Unique
+    private final Long2ObjectMap<NbtCompound> atlas_pendingStubs = new Long2ObjectOpenHashMap<>();
+
     @Inject(method = "<init>",
             at = @At(
                     value = "INVOKE_ASSIGN",
@@ -59,11 +81,61 @@ public class ThreadedAnvilChunkStorageMixin {
             CallbackInfo ci
     ) {
         if (chunkGenerator instanceof AtlasChunkGenerator atlasChunkGenerator) {
-            this.noiseConfig = NoiseConfig.create(
+            this.noiseConfig = NoiseConfigs.getOrCreate(
                     atlasChunkGenerator.getSettings().value(),
                     world.getRegistryManager().getWrapperOrThrow(RegistryKeys.NOISE_PARAMETERS),
                     world.getSeed()
             );
         }
     }
+
+    @ModifyArg(method = "save(Lnet/minecraft/world/chunk/Chunk;)Z",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraft/server/world/ServerChunkLoadingManager;setNbt(Lnet/minecraft/util/math/ChunkPos;Lnet/minecraft/nbt/NbtCompound;)Ljava/util/concurrent/CompletableFuture;"),
+            index = 1
+    )
+    private NbtCompound atlas_stubChunk(NbtCompound nbt) {
+        if (AtlasConfig.stubChunks && this.world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator atlasChunkGenerator) {
+            // the full chunk is written right away; regenerating the terrain to compare against happens off the
+            // server thread, and the stub replaces the full chunk only if it wasn't saved again in the meantime
+            ChunkPos pos = new ChunkPos(nbt.getInt("xPos"), nbt.getInt("zPos"));
+            synchronized (this.atlas_pendingStubs) {
+                this.atlas_pendingStubs.put(pos.toLong(), nbt);
+            }
+            NbtCompound stub = nbt.copy();
+            AtlasExecutor.get().execute("stub_chunks", () -> {
+                try {
+                    if (ChunkStubs.strip(this.world, atlasChunkGenerator, this.noiseConfig, stub) == 0) {
+                        this.atlas_clearPendingStub(pos, nbt);
+                        return;
+                    }
+                    synchronized (this.atlas_pendingStubs) {
+                        if (this.atlas_pendingStubs.get(pos.toLong()) != nbt) return;
+                        this.atlas_pendingStubs.remove(pos.toLong());
+                        ((ServerChunkLoadingManager) (Object) this).setNbt(pos, stub);
+                    }
+                } catch (Throwable t) {
+                    this.atlas_clearPendingStub(pos, nbt);
+                    Atlas.LOGGER.error("could not stub chunk " + pos + ", it stays saved in full", t);
+                }
+            });
+        }
+        return nbt;
+    }
+
+    @Unique
+    private void atlas_clearPendingStub(ChunkPos pos, NbtCompound nbt) {
+        synchronized (this.atlas_pendingStubs) {
+            if (this.atlas_pendingStubs.get(pos.toLong()) == nbt) this.atlas_pendingStubs.remove(pos.toLong());
+        }
+    }
+
+    // stubs are expanded even with stub_chunks turned off, so turning it off never loses terrain
+    @Inject(method = "getUpdatedChunkNbt", at = @At("RETURN"), cancellable = true)
+    private void atlas_expandStub(ChunkPos pos, CallbackInfoReturnable<CompletableFuture<Optional<NbtCompound>>> cir) {
+        if (this.world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator atlasChunkGenerator) {
+            cir.setReturnValue(cir.getReturnValue().thenApply(nbt -> nbt.map(n -> ChunkStubs.expand(this.world, atlasChunkGenerator, this.noiseConfig, n))));
+        }
+    }
 }
@@ -0,0 +1,246 @@
+package com.miir.atlas.pregen;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkLevelType;
+import net.minecraft.server.world.ChunkLevels;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * headless, resumable pregeneration of a whole atlas map, split over any number of server processes. start every
+ * worker as a dedicated server with its own world folder (same seed and datapacks) and {@code -Datlas.pregen=<dimension>}.
+ * the map is cut into shards of whole region files; each worker claims shards through a {@link ShardCoordinator}
+ * directory, generates them, and copies their region files into the coordinator's merged world. the server stops
+ * once no shards are left.
+ * <p>
+ * a shard's chunks are generated to {@code full}, and the ring of chunks around it to {@code light}, so features and
+ * light spilling over from the neighbouring shard end up in this shard's region files just like they would in a single
+ * world. region files outside the shard are left in the worker's own world and never exported, so no two workers ever
+ * write the same output file.
+ * <p>
+ * options (all system properties):
+ * <ul>
+ *     <li>{@code atlas.pregen}: the dimension to generate, e.g. {@code avila:avila}</li>
+ *     <li>{@code atlas.pregen.dir}: the coordinator directory shared by all workers, default {@code atlas-pregen}</li>
+ *     <li>{@code atlas.pregen.worker}: this worker's id, default host name and run directory. a restarted worker
+ *     with the same id resumes its shard from the last checkpoint</li>
+ *     <li>{@code atlas.pregen.shard_size}: shard side length in region files, default 1</li>
+ *     <li>{@code atlas.pregen.concurrency}: chunks requested at once, default 4 per core</li>
+ *     <li>{@code atlas.pregen.checkpoint}: chunks between checkpoints, default 1024</li>
+ *     <li>{@code atlas.pregen.lease}: seconds without a sign of life before other workers may take over a shard,
+ *     default 600</li>
+ * </ul>
+ */
+public class Pregenerator {
+    private static final ChunkTicketType<ChunkPos> TICKET = ChunkTicketType.create("atlas_pregen", Comparator.comparingLong(ChunkPos::toLong));
+    private static final String[] STORAGE = {"region", "entities", "poi"};
+    private static final long HEARTBEAT_MILLIS = 30_000;
+
+    private final RegistryKey<World> dimension;
+    private final Path directory;
+    private final String worker;
+    private final int shardSize;
+    private final int concurrency;
+    private final int checkpointInterval;
+    private final long leaseMillis;
+
+    private ServerWorld world;
+    private ShardCoordinator coordinator;
+    private List<Shard> shards;
+    private int[] bounds;
+    private boolean finished;
+
+    private Shard shard;
+    private List<ChunkPos> chunks;
+    private int shardChunks;
+    private BitSet completed;
+    private int next;
+    private int inFlight;
+    private int saved;
+    private long shardStart;
+    private long lastHeartbeat;
+
+    private Pregenerator(RegistryKey<World> dimension, Path directory, String worker, int shardSize, int concurrency, int checkpointInterval, long leaseMillis) {
+        this.dimension = dimension;
+        this.directory = directory;
+        this.worker = worker;
+        this.shardSize = shardSize;
+        this.concurrency = concurrency;
+        this.checkpointInterval = checkpointInterval;
+        this.leaseMillis = leaseMillis;
+    }
+
+    public static void register() {
+        String dimension = System.getProperty("atlas.pregen");
+        if (dimension == null) return;
+        Pregenerator pregenerator = new Pregenerator(
+                RegistryKey.of(RegistryKeys.WORLD, Identifier.of(dimension)),
+                Path.of(System.getProperty("atlas.pregen.dir", "atlas-pregen")),
+                System.getProperty("atlas.pregen.worker", defaultWorker()),
+                Math.max(1, Integer.getInteger("atlas.pregen.shard_size", 1)),
+                Math.max(1, Integer.getInteger("atlas.pregen.concurrency", 4 * Runtime.getRuntime().availableProcessors())),
+                Math.max(1, Integer.getInteger("atlas.pregen.checkpoint", 1024)),
+                1000L * Integer.getInteger("atlas.pregen.lease", 600)
+        );
+        ServerLifecycleEvents.SERVER_STARTED.register(pregenerator::start);
+        ServerTickEvents.END_SERVER_TICK.register(pregenerator::tick);
+    }
+
+    private static String defaultWorker() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + ":" + Path.of("").toAbsolutePath();
+    }
+
+    private void start(MinecraftServer server) {
+        this.world = server.getWorld(this.dimension);
+        try {
+            if (this.world == null) {
+                throw new IllegalStateException("no dimension named " + this.dimension.getValue() + "!");
+            }
+            if (!(this.world.getChunkManager().getChunkGenerator() instanceof AtlasChunkGenerator generator)) {
+                throw new IllegalStateException(this.dimension.getValue() + " does not use the atlas chunk generator!");
+            }
+            this.bounds = generator.getMapChunkBounds();
+            this.shards = Shard.cover(this.bounds, this.shardSize);
+            this.coordinator = new ShardCoordinator(this.directory, this.worker.replace('\n', ' '), this.leaseMillis);
+            Atlas.LOGGER.info("atlas pregen: worker " + this.worker + " generating " + this.dimension.getValue() + ", " + this.shards.size() + " shards of " + this.shardSize + "x" + this.shardSize + " regions, coordinated in " + this.directory.toAbsolutePath());
+        } catch (Exception e) {
+            Atlas.LOGGER.error("atlas pregen failed to start!", e);
+            this.finished = true;
+            server.stop(false);
+        }
+    }
+
+    private void tick(MinecraftServer server) {
+        if (this.finished || this.coordinator == null) return;
+        try {
+            if (this.shard == null && !this.claimShard()) {
+                Atlas.LOGGER.info("atlas pregen: no shards left, stopping");
+                this.finished = true;
+                server.stop(false);
+                return;
+            }
+            this.request();
+            if (this.saved + this.checkpointInterval <= this.completedPrefix()) {
+                this.checkpoint(server);
+            }
+            if (this.completedPrefix() >= this.chunks.size()) {
+                this.finishShard(server);
+            } else if (System.currentTimeMillis() - this.lastHeartbeat > HEARTBEAT_MILLIS) {
+                this.coordinator.heartbeat(this.shard);
+                this.lastHeartbeat = System.currentTimeMillis();
+            }
+        } catch (Exception e) {
+            Atlas.LOGGER.error("atlas pregen failed on shard " + this.shard + "!", e);
+            this.finished = true;
+            server.stop(false);
+        }
+    }
+
+    private boolean claimShard() throws IOException {
+        this.shard = this.coordinator.claim(this.shards);
+        if (this.shard == null) return false;
+        this.chunks = new ArrayList<>(this.shard.getChunks(this.bounds));
+        this.shardChunks = this.chunks.size();
+        this.chunks.addAll(this.shard.getMargin(this.bounds));
+        this.completed = new BitSet(this.chunks.size());
+        // checkpoints only ever cover a prefix of the list, so everything before it is already in this world
+        this.saved = Math.min(this.coordinator.getCheckpoint(this.shard), this.chunks.size());
+        this.completed.set(0, this.saved);
+        this.next = this.saved;
+        this.inFlight = 0;
+        this.shardStart = System.nanoTime();
+        this.lastHeartbeat = System.currentTimeMillis();
+        Atlas.LOGGER.info("atlas pregen: claimed shard " + this.shard + " (" + this.shardChunks + " chunks" + (this.saved > 0 ? ", resuming at " + this.saved : "") + ")");
+        return true;
+    }
+
+    private void request() {
+        ServerChunkManager chunkManager = this.world.getChunkManager();
+        while (this.inFlight < this.concurrency && this.next < this.chunks.size()) {
+            int index = this.next++;
+            ChunkPos pos = this.chunks.get(index);
+            ChunkStatus status = index < this.shardChunks ? ChunkStatus.FULL : ChunkStatus.LIGHT;
+            int radius = ticketRadius(status);
+            Shard shard = this.shard;
+            this.inFlight++;
+            chunkManager.addTicket(TICKET, pos, radius, pos);
+            chunkManager.getChunkFutureSyncOnMainThread(pos.x, pos.z, status, true).whenCompleteAsync((chunk, throwable) -> {
+                chunkManager.removeTicket(TICKET, pos, radius, pos);
+                if (shard != this.shard) return;
+                if (throwable != null || !chunk.isPresent()) {
+                    Atlas.LOGGER.error("atlas pregen: could not generate chunk " + pos + "!", throwable);
+                }
+                this.inFlight--;
+                this.completed.set(index);
+            }, this.world.getServer());
+        }
+    }
+
+    /**
+     * @return the ticket radius that holds a chunk at exactly {@code status}. tickets count their radius down from the
+     * full level, so anything below full has a negative one, and margin chunks don't pull their own neighbours in
+     */
+    private static int ticketRadius(ChunkStatus status) {
+        return ChunkLevels.getLevelFromType(ChunkLevelType.FULL) - ChunkLevels.getLevelFromStatus(status);
+    }
+
+    private int completedPrefix() {
+        return this.completed.nextClearBit(0);
+    }
+
+    private void checkpoint(MinecraftServer server) throws IOException {
+        int prefix = this.completedPrefix();
+        server.saveAll(true, true, false);
+        this.coordinator.checkpoint(this.shard, prefix);
+        this.saved = prefix;
+        Atlas.LOGGER.info(String.format(Locale.ROOT, "atlas pregen: shard %s at %d/%d chunks", this.shard, Math.min(prefix, this.shardChunks), this.shardChunks));
+    }
+
+    private void finishShard(MinecraftServer server) throws IOException {
+        server.saveAll(true, true, false);
+        Path root = server.getSavePath(WorldSavePath.ROOT);
+        Path dimensionDirectory = DimensionType.getSaveDirectory(this.dimension, root);
+        Path relativeDimension = root.relativize(dimensionDirectory);
+        for (String storage : STORAGE) {
+            for (String file : this.shard.getRegionFiles()) {
+                Path source = dimensionDirectory.resolve(storage).resolve(file);
+                if (Files.exists(source)) {
+                    this.coordinator.export(source, relativeDimension.resolve(storage).resolve(file));
+                }
+            }
+        }
+        this.coordinator.complete(this.shard);
+        double seconds = (System.nanoTime() - this.shardStart) / 1e9;
+        Atlas.LOGGER.info(String.format(Locale.ROOT, "atlas pregen: finished shard %s in %.1f s (%.1f chunks/s)", this.shard, seconds, this.shardChunks / seconds));
+        this.shard = null;
+    }
+}
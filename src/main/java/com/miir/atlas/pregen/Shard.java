@@ -0,0 +1,95 @@
+package com.miir.atlas.pregen;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a square of {@code regions x regions} region files, the unit of work handed to one pregeneration worker.
+ */
+public record Shard(int x, int z, int regions) {
+    public static final int REGION_CHUNKS = 32;
+
+    /**
+     * @param bounds chunk bounds of the map, as {@code {minX, minZ, maxX, maxZ}} inclusive
+     * @return every shard that overlaps the bounds, row by row
+     */
+    public static List<Shard> cover(int[] bounds, int regions) {
+        int chunks = regions * REGION_CHUNKS;
+        List<Shard> shards = new ArrayList<>();
+        for (int z = Math.floorDiv(bounds[1], chunks); z <= Math.floorDiv(bounds[3], chunks); z++) {
+            for (int x = Math.floorDiv(bounds[0], chunks); x <= Math.floorDiv(bounds[2], chunks); x++) {
+                shards.add(new Shard(x, z, regions));
+            }
+        }
+        return shards;
+    }
+
+    public int minChunkX() {
+        return this.x * this.regions * REGION_CHUNKS;
+    }
+
+    public int minChunkZ() {
+        return this.z * this.regions * REGION_CHUNKS;
+    }
+
+    public int maxChunkX() {
+        return this.minChunkX() + this.regions * REGION_CHUNKS - 1;
+    }
+
+    public int maxChunkZ() {
+        return this.minChunkZ() + this.regions * REGION_CHUNKS - 1;
+    }
+
+    /**
+     * @return the chunks of this shard that lie within the map bounds, row by row
+     */
+    public List<ChunkPos> getChunks(int[] bounds) {
+        List<ChunkPos> chunks = new ArrayList<>();
+        for (int z = Math.max(bounds[1], this.minChunkZ()); z <= Math.min(bounds[3], this.maxChunkZ()); z++) {
+            for (int x = Math.max(bounds[0], this.minChunkX()); x <= Math.min(bounds[2], this.maxChunkX()); x++) {
+                chunks.add(new ChunkPos(x, z));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the chunks just outside this shard that touch its in-bounds chunks
+     */
+    public List<ChunkPos> getMargin(int[] bounds) {
+        int minX = Math.max(bounds[0], this.minChunkX());
+        int minZ = Math.max(bounds[1], this.minChunkZ());
+        int maxX = Math.min(bounds[2], this.maxChunkX());
+        int maxZ = Math.min(bounds[3], this.maxChunkZ());
+        List<ChunkPos> chunks = new ArrayList<>();
+        if (minX > maxX || minZ > maxZ) return chunks;
+        for (int z = minZ - 1; z <= maxZ + 1; z++) {
+            for (int x = minX - 1; x <= maxX + 1; x++) {
+                boolean inside = x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+                boolean inShard = x >= this.minChunkX() && x <= this.maxChunkX() && z >= this.minChunkZ() && z <= this.maxChunkZ();
+                if (!inside && !inShard) chunks.add(new ChunkPos(x, z));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the file names of the region files in this shard, e.g. {@code r.0.-1.mca}
+     */
+    public List<String> getRegionFiles() {
+        List<String> files = new ArrayList<>();
+        for (int rz = this.z * this.regions; rz < (this.z + 1) * this.regions; rz++) {
+            for (int rx = this.x * this.regions; rx < (this.x + 1) * this.regions; rx++) {
+                files.add("r." + rx + "." + rz + ".mca");
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public String toString() {
+        return this.x + "_" + this.z;
+    }
+}
@@ -0,0 +1,153 @@
+package com.miir.atlas.pregen;
+
+import com.miir.atlas.Atlas;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * hands out shards to pregeneration workers through a shared directory, so any number of server processes on one
+ * machine or on shared storage can work on the same map without talking to each other. relies only on atomic file
+ * creation and renames:
+ * <ul>
+ *     <li>{@code claims/<shard>}: created by the worker that owns the shard, holding its id. the worker touches it at
+ *     every checkpoint; a claim that hasn't been touched for longer than the lease can be taken over</li>
+ *     <li>{@code progress/<shard>}: the owning worker's id and how many of the shard's chunks it has saved</li>
+ *     <li>{@code done/<shard>}: the shard's region files have been copied to {@code world/}</li>
+ *     <li>{@code world/}: the merged output, laid out like a world folder</li>
+ * </ul>
+ */
+public class ShardCoordinator {
+    private final Path directory;
+    private final String worker;
+    private final long leaseMillis;
+
+    public ShardCoordinator(Path directory, String worker, long leaseMillis) throws IOException {
+        this.directory = directory;
+        this.worker = worker;
+        this.leaseMillis = leaseMillis;
+        Files.createDirectories(directory.resolve("claims"));
+        Files.createDirectories(directory.resolve("progress"));
+        Files.createDirectories(directory.resolve("done"));
+    }
+
+    public Path getOutput() {
+        return this.directory.resolve("world");
+    }
+
+    /**
+     * @return the first shard that is neither done nor claimed by a live worker, now claimed by this one, or null if
+     * there is none left
+     */
+    public Shard claim(List<Shard> shards) throws IOException {
+        for (Shard shard : shards) {
+            if (this.isDone(shard)) continue;
+            if (this.tryClaim(shard)) return shard;
+        }
+        return null;
+    }
+
+    private boolean tryClaim(Shard shard) throws IOException {
+        Path claim = this.path("claims", shard);
+        try {
+            Files.writeString(claim, this.worker, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // fall through to check the existing claim
+        }
+        String owner;
+        FileTime touched;
+        try {
+            owner = Files.readString(claim, StandardCharsets.UTF_8).trim();
+            touched = Files.getLastModifiedTime(claim);
+        } catch (NoSuchFileException e) {
+            // released or taken over while we looked, try again next time
+            return false;
+        }
+        if (owner.equals(this.worker)) {
+            // this worker was restarted and picks up where it left off
+            this.heartbeat(shard);
+            return true;
+        }
+        if (System.currentTimeMillis() - touched.toMillis() < this.leaseMillis) return false;
+        // only one worker can win the rename of a stale claim, the others see it gone
+        Path stale = claim.resolveSibling(claim.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(claim, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            throw new IOException("the pregen directory " + this.directory + " must support atomic renames!", e);
+        }
+        Files.deleteIfExists(stale);
+        Atlas.LOGGER.warn("atlas pregen: taking over shard " + shard + " from " + owner + ", whose lease expired");
+        return this.tryClaim(shard);
+    }
+
+    public void heartbeat(Shard shard) throws IOException {
+        Files.setLastModifiedTime(this.path("claims", shard), FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * @return how many chunks of the shard this worker has already saved. progress made by another worker doesn't
+     * count, since its chunks are in that worker's world
+     */
+    public int getCheckpoint(Shard shard) throws IOException {
+        Path progress = this.path("progress", shard);
+        if (!Files.exists(progress)) return 0;
+        String[] parts = Files.readString(progress, StandardCharsets.UTF_8).trim().split(" ");
+        if (parts.length != 2 || !parts[0].equals(this.worker)) return 0;
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void checkpoint(Shard shard, int chunks) throws IOException {
+        this.writeAtomically(this.path("progress", shard), this.worker + " " + chunks);
+        this.heartbeat(shard);
+    }
+
+    /**
+     * copies a file produced for this shard into the merged world. shards never share a region file, so no two
+     * workers ever write the same output file
+     */
+    public void export(Path source, Path relative) throws IOException {
+        Path target = this.getOutput().resolve(relative);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void complete(Shard shard) throws IOException {
+        this.writeAtomically(this.path("done", shard), this.worker);
+        Files.deleteIfExists(this.path("progress", shard));
+        Files.deleteIfExists(this.path("claims", shard));
+    }
+
+    public boolean isDone(Shard shard) {
+        return Files.exists(this.path("done", shard));
+    }
+
+    private void writeAtomically(Path path, String content) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path path(String kind, Shard shard) {
+        return this.directory.resolve(kind).resolve(shard.toString());
+    }
+}
@@ -0,0 +1,240 @@
+package com.miir.atlas.render;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.biome.BiomeEntry;
+import com.miir.atlas.world.gen.biome.source.AtlasBiomeSource;
+import com.miir.atlas.world.gen.chunk.AtlasChunkGenerator;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * renders a zoomable, hillshaded overview of an atlas dimension straight from its maps, without generating any chunks.
+ * tiles are {@value #TILE_SIZE} pixels square and written to {@code <directory>/<level>/<x>/<z>.png}, where a pixel on
+ * level {@code n} covers {@code 2^n} blocks; level 0 is one pixel per block, and the last level fits the whole map in
+ * the four tiles around the origin. tiles are rendered independently and written as soon as they're done, tiles
+ * with nothing on them are skipped.
+ * <p>
+ * every level is sampled straight from the maps through {@link AtlasChunkGenerator#sampleTerrain}, so the coarse
+ * levels don't wait for the fine ones.
+ */
+public class PreviewRenderer {
+    public static final int TILE_SIZE = 256;
+    private static final int WATER = 0x3F76E4;
+    private static final int NO_BIOME = 0x808080;
+    // light from the north-west, 45 degrees up
+    private static final double LIGHT_X = -0.5;
+    private static final double LIGHT_Y = Math.sqrt(0.5);
+    private static final double LIGHT_Z = -0.5;
+
+    private final AtlasChunkGenerator generator;
+    private final Path directory;
+    private final int minY;
+    private final int[] paletteColors;
+
+    public PreviewRenderer(AtlasChunkGenerator generator, Path directory) {
+        this.generator = generator;
+        this.directory = directory;
+        this.minY = generator.getMinimumY();
+        if (generator.getBiomeSource() instanceof AtlasBiomeSource biomeSource) {
+            List<BiomeEntry> entries = biomeSource.getBiomeEntries();
+            // the last palette entry is the default biome, which has no color
+            this.paletteColors = new int[biomeSource.getBiomePalette().size()];
+            for (int i = 0; i < this.paletteColors.length; i++) {
+                this.paletteColors[i] = i < entries.size() ? entries.get(i).getColor() & 0xFFFFFF : NO_BIOME;
+            }
+        } else {
+            this.paletteColors = null;
+        }
+    }
+
+    /**
+     * @return the coarsest level, the first one where the whole map fits in the four tiles around the origin
+     */
+    public int getMaxLevel() {
+        int[] bounds = this.generator.getMapChunkBounds();
+        int extent = 16 * Math.max(Math.max(-bounds[0], -bounds[1]), Math.max(bounds[2], bounds[3]) + 1);
+        int level = 0;
+        while ((long) TILE_SIZE << level < extent) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * renders every tile of every level, one task per tile. at most {@code maxInFlight} tiles are queued or rendering
+     * at once, so a large map doesn't flood the executor and hold up chunk generation sharing it.
+     * @return the number of tiles written
+     */
+    public CompletableFuture<Integer> renderAll(Executor executor, int maxInFlight) {
+        int[] bounds = this.generator.getMapChunkBounds();
+        int maxLevel = this.getMaxLevel();
+        List<TileRange> levels = new ArrayList<>(maxLevel + 1);
+        long total = 0;
+        for (int level = 0; level <= maxLevel; level++) {
+            // in blocks, per tile
+            int span = TILE_SIZE << level;
+            int minTileX = Math.floorDiv(bounds[0] << 4, span);
+            int minTileZ = Math.floorDiv(bounds[1] << 4, span);
+            int maxTileX = Math.floorDiv((bounds[2] << 4) + 15, span);
+            int maxTileZ = Math.floorDiv((bounds[3] << 4) + 15, span);
+            TileRange range = new TileRange(level, minTileX, minTileZ, maxTileX - minTileX + 1, maxTileZ - minTileZ + 1);
+            levels.add(range);
+            total += range.size();
+        }
+        Atlas.LOGGER.info(String.format(Locale.ROOT, "rendering %d preview tiles on %d levels to %s", total, maxLevel + 1, this.directory));
+        Rendering rendering = new Rendering(levels, total, executor);
+        if (total == 0) {
+            rendering.result.complete(0);
+        }
+        for (int i = 0; i < Math.min(maxInFlight, total); i++) {
+            rendering.submitNext();
+        }
+        return rendering.result;
+    }
+
+    /**
+     * the tiles of one level, {@code width} by {@code height} tiles from {@code minTileX, minTileZ}
+     */
+    private record TileRange(int level, int minTileX, int minTileZ, int width, int height) {
+        long size() {
+            return (long) this.width * this.height;
+        }
+    }
+
+    /**
+     * hands out the tiles of a {@link #renderAll} run one at a time, each finished tile submitting the next
+     */
+    private final class Rendering {
+        private final List<TileRange> levels;
+        private final long total;
+        private final Executor executor;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicLong finished = new AtomicLong();
+        private final AtomicInteger written = new AtomicInteger();
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Rendering(List<TileRange> levels, long total, Executor executor) {
+            this.levels = levels;
+            this.total = total;
+            this.executor = executor;
+        }
+
+        void submitNext() {
+            long index = this.next.getAndIncrement();
+            if (index >= this.total || this.result.isDone()) return;
+            try {
+                this.executor.execute(() -> this.render(index));
+            } catch (Throwable t) {
+                this.result.completeExceptionally(t);
+            }
+        }
+
+        private void render(long index) {
+            try {
+                for (TileRange range : this.levels) {
+                    if (index < range.size()) {
+                        int x = range.minTileX() + (int) (index / range.height());
+                        int z = range.minTileZ() + (int) (index % range.height());
+                        if (PreviewRenderer.this.renderTile(range.level(), x, z)) this.written.incrementAndGet();
+                        break;
+                    }
+                    index -= range.size();
+                }
+            } catch (Throwable t) {
+                this.result.completeExceptionally(t);
+                return;
+            }
+            if (this.finished.incrementAndGet() == this.total) {
+                this.result.complete(this.written.get());
+            } else {
+                this.submitNext();
+            }
+        }
+    }
+
+    /**
+     * renders and writes one tile, if anything is on it.
+     * @return whether the tile was written
+     */
+    public boolean renderTile(int level, int tileX, int tileZ) throws IOException {
+        int stride = 1 << level;
+        // one extra column on every side for the slopes at the edges
+        int size = TILE_SIZE + 2;
+        int[] elevations = new int[size * size];
+        int[] waterLevels = new int[size * size];
+        int[] biomes = this.paletteColors == null ? null : new int[size * size];
+        this.generator.sampleTerrain(tileX * TILE_SIZE * stride - stride, tileZ * TILE_SIZE * stride - stride, size, size, stride, elevations, waterLevels, biomes);
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        boolean empty = true;
+        for (int z = 0; z < TILE_SIZE; z++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                int i = (z + 1) * size + x + 1;
+                int elevation = elevations[i];
+                if (elevation < this.minY) continue;
+                empty = false;
+                int color = biomes == null ? NO_BIOME : this.paletteColors[biomes[i]];
+                int depth = waterLevels[i] - elevation;
+                double brightness;
+                if (depth > 0) {
+                    // water is flat, deeper water hides more of the ground
+                    color = mix(color, WATER, Math.min(1, 0.5 + depth / 32.0));
+                    brightness = 1;
+                } else {
+                    brightness = this.shade(elevations, i, size, stride);
+                }
+                image.setRGB(x, z, 0xFF000000 | scale(color, brightness));
+            }
+        }
+        if (empty) return false;
+        Path file = this.directory.resolve(Integer.toString(level)).resolve(Integer.toString(tileX)).resolve(tileZ + ".png");
+        Files.createDirectories(file.getParent());
+        // written next to the tile and moved into place, so a web map never serves a half-written tile
+        Path temp = file.resolveSibling(tileZ + ".png.tmp");
+        ImageIO.write(image, "png", temp.toFile());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * @return the lambertian brightness of the slope at {@code i}: 1 on flat ground, down to 0.4 on slopes facing away
+     * from the light
+     */
+    private double shade(int[] elevations, int i, int size, int stride) {
+        int center = elevations[i];
+        double dx = (this.neighbour(elevations, i + 1, center) - this.neighbour(elevations, i - 1, center)) / (2.0 * stride);
+        double dz = (this.neighbour(elevations, i + size, center) - this.neighbour(elevations, i - size, center)) / (2.0 * stride);
+        double light = (-dx * LIGHT_X + LIGHT_Y - dz * LIGHT_Z) / Math.sqrt(dx * dx + 1 + dz * dz);
+        return 0.4 + 0.6 * Math.max(0, light) / LIGHT_Y;
+    }
+
+    // columns outside the map count as flat
+    private int neighbour(int[] elevations, int i, int fallback) {
+        return elevations[i] < this.minY ? fallback : elevations[i];
+    }
+
+    private static int mix(int a, int b, double t) {
+        int r = (int) Math.round((a >> 16 & 0xFF) * (1 - t) + (b >> 16 & 0xFF) * t);
+        int g = (int) Math.round((a >> 8 & 0xFF) * (1 - t) + (b >> 8 & 0xFF) * t);
+        int bl = (int) Math.round((a & 0xFF) * (1 - t) + (b & 0xFF) * t);
+        return r << 16 | g << 8 | bl;
+    }
+
+    private static int scale(int color, double brightness) {
+        int r = Math.min(255, (int) ((color >> 16 & 0xFF) * brightness));
+        int g = Math.min(255, (int) ((color >> 8 & 0xFF) * brightness));
+        int b = Math.min(255, (int) ((color & 0xFF) * brightness));
+        return r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,102 @@
+package com.miir.atlas.stats;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.NamespacedMapImage;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * process-wide counters and timings for atlas. everything here is recorded with striped counters (and sampled timing
+ * for the per-block hot paths), so it stays enabled in production. exposed through {@code /atlas stats} and as JMX
+ * MBeans under the {@value #DOMAIN} domain:
+ * <ul>
+ *     <li>{@code com.miir.atlas:type=Stage,name=<stage>}</li>
+ *     <li>{@code com.miir.atlas:type=Lookup,name=<table>}</li>
+ *     <li>{@code com.miir.atlas:type=Map,kind=<grayscale|color>,name="<path>"}</li>
+ *     <li>{@code com.miir.atlas:type=Executor}</li>
+ * </ul>
+ */
+public class AtlasStats {
+    public static final String DOMAIN = "com.miir.atlas";
+
+    public static final StageTimer POPULATE_NOISE = new StageTimer("populate_noise");
+    public static final StageTimer BUILD_SURFACE = new StageTimer("build_surface");
+    public static final StageTimer CARVE = new StageTimer("carve");
+    public static final StageTimer GET_BIOME = new StageTimer("get_biome", 64);
+    public static final StageTimer MAP_LOAD = new StageTimer("map_load");
+    public static final StageTimer SKY_LIGHT_SURFACE = new StageTimer("sky_light_surface");
+    /**
+     * stages that run once per chunk, so their throughput is in chunks per second
+     */
+    public static final List<StageTimer> CHUNK_STAGES = List.of(POPULATE_NOISE, BUILD_SURFACE, CARVE);
+    /**
+     * timers of anything else, like one biome lookup or one map load
+     */
+    public static final List<StageTimer> OTHER_TIMERS = List.of(GET_BIOME, MAP_LOAD, SKY_LIGHT_SURFACE);
+    public static final List<StageTimer> STAGES = Stream.concat(CHUNK_STAGES.stream(), OTHER_TIMERS.stream()).toList();
+
+    /**
+     * biome map colors found directly in the color table vs. colors that needed a nearest-color match
+     */
+    public static final HitCounter BIOME_COLORS = new HitCounter("biome_color");
+    /**
+     * nearest-color matches answered from the cache vs. computed
+     */
+    public static final HitCounter BIOME_CLOSEST_CACHE = new HitCounter("biome_closest_cache");
+    public static final List<HitCounter> LOOKUPS = List.of(BIOME_COLORS, BIOME_CLOSEST_CACHE);
+
+    private static final Map<NamespacedMapImage, MapStats> MAPS = new ConcurrentHashMap<>();
+
+    public static void reset() {
+        for (StageTimer stage : STAGES) {
+            stage.reset();
+        }
+        for (HitCounter lookup : LOOKUPS) {
+            lookup.reset();
+        }
+    }
+
+    public static void registerMBeans() {
+        for (StageTimer stage : STAGES) {
+            registerMBean(stage, "type=Stage,name=" + stage.getName());
+        }
+        for (HitCounter lookup : LOOKUPS) {
+            registerMBean(lookup, "type=Lookup,name=" + lookup.getName());
+        }
+    }
+
+    public static void onMapLoaded(NamespacedMapImage map, long nanos) {
+        MapStats stats = MAPS.computeIfAbsent(map, m -> {
+            MapStats s = new MapStats(m);
+            registerMBean(s, "type=Map,kind=" + m.getType().name().toLowerCase(Locale.ROOT) + ",name=" + ObjectName.quote(m.getPath()));
+            return s;
+        });
+        stats.setLoadNanos(nanos);
+    }
+
+    public static Collection<MapStats> getMaps() {
+        return MAPS.values();
+    }
+
+    public static void registerMBean(Object bean, String properties) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+        } catch (JMException | SecurityException e) {
+            Atlas.LOGGER.warn("could not register atlas mbean " + properties, e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.miir.atlas.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * hit/miss counts for a lookup table or cache.
+ */
+public class HitCounter implements HitCounterMBean {
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public HitCounter(String name) {
+        this.name = name;
+    }
+
+    public void hit() {
+        this.hits.increment();
+    }
+
+    public void miss() {
+        this.misses.increment();
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public void reset() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+}
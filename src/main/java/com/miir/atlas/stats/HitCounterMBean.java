@@ -0,0 +1,13 @@
+package com.miir.atlas.stats;
+
+public interface HitCounterMBean {
+    String getName();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    void reset();
+}
@@ -0,0 +1,59 @@
+package com.miir.atlas.stats;
+
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import com.miir.atlas.world.gen.raster.MapRaster;
+
+import java.util.Locale;
+
+/**
+ * size and load time of one loaded map.
+ */
+public class MapStats implements MapStatsMBean {
+    private final NamespacedMapImage map;
+    private volatile long loadNanos;
+
+    public MapStats(NamespacedMapImage map) {
+        this.map = map;
+    }
+
+    void setLoadNanos(long loadNanos) {
+        this.loadNanos = loadNanos;
+    }
+
+    @Override
+    public String getPath() {
+        return this.map.getPath();
+    }
+
+    @Override
+    public String getType() {
+        return this.map.getType().name().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.map.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.map.getHeight();
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return this.map.getMemoryFootprint();
+    }
+
+    /**
+     * @return the map's raster, which maps with the same source share
+     */
+    public MapRaster getRaster() {
+        return this.map.getRaster();
+    }
+
+    @Override
+    public double getLoadMillis() {
+        return this.loadNanos / 1e6;
+    }
+}
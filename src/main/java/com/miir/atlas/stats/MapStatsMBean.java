@@ -0,0 +1,15 @@
+package com.miir.atlas.stats;
+
+public interface MapStatsMBean {
+    String getPath();
+
+    String getType();
+
+    int getWidth();
+
+    int getHeight();
+
+    long getMemoryBytes();
+
+    double getLoadMillis();
+}
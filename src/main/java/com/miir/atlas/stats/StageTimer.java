@@ -0,0 +1,89 @@
+package com.miir.atlas.stats;
+
+import com.miir.atlas.util.LatencyHistogram;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * wall time spent in one generation stage, summed over all worker threads. every call is counted, but for very hot
+ * stages only one in {@code sampleRate} calls is actually timed, so the timer can stay on permanently.
+ */
+public class StageTimer implements StageTimerMBean {
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+    private final String name;
+    private final int sampleRate;
+    private final LongAdder calls = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public StageTimer(String name) {
+        this(name, 1);
+    }
+
+    public StageTimer(String name, int sampleRate) {
+        this.name = name;
+        this.sampleRate = sampleRate;
+    }
+
+    public long start() {
+        if (this.sampleRate > 1 && ThreadLocalRandom.current().nextInt(this.sampleRate) != 0) return NOT_SAMPLED;
+        return System.nanoTime();
+    }
+
+    public void stop(long start) {
+        this.calls.increment();
+        if (start != NOT_SAMPLED) this.histogram.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return this.histogram;
+    }
+
+    @Override
+    public long getCount() {
+        return this.calls.sum();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return this.histogram.getMeanMillis();
+    }
+
+    @Override
+    public double getP99Millis() {
+        return this.histogram.getPercentileMillis(0.99);
+    }
+
+    /**
+     * @return total time spent in this stage, extrapolated from the timed samples
+     */
+    @Override
+    public double getTotalSeconds() {
+        return this.getMeanMillis() * this.getCount() / 1000;
+    }
+
+    /**
+     * @return how many chunks one thread gets through per second in this stage alone
+     */
+    @Override
+    public double getChunksPerSecond() {
+        double mean = this.getMeanMillis();
+        return mean == 0 ? 0 : 1000 / mean;
+    }
+
+    @Override
+    public void reset() {
+        this.calls.reset();
+        this.histogram.reset();
+    }
+}
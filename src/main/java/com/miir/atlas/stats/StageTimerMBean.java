@@ -0,0 +1,19 @@
+package com.miir.atlas.stats;
+
+public interface StageTimerMBean {
+    String getName();
+
+    long getCount();
+
+    int getSampleRate();
+
+    double getMeanMillis();
+
+    double getP99Millis();
+
+    double getTotalSeconds();
+
+    double getChunksPerSecond();
+
+    void reset();
+}
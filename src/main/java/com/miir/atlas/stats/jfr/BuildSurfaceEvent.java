@@ -0,0 +1,11 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("atlas.BuildSurface")
+@Label("Build Surface")
+@Description("Atlas applying surface rules to a chunk")
+public class BuildSurfaceEvent extends ChunkStageEvent {
+}
@@ -0,0 +1,11 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("atlas.Carve")
+@Label("Carve")
+@Description("Atlas running carvers for a chunk")
+public class CarveEvent extends ChunkStageEvent {
+}
@@ -0,0 +1,42 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+
+/**
+ * base for the per-chunk generation stage events. the duration is the time the stage took for this chunk.
+ */
+@Category({"Atlas", "World Generation"})
+@StackTrace(false)
+public abstract class ChunkStageEvent extends Event {
+    @Label("Chunk X")
+    public int chunkX;
+
+    @Label("Chunk Z")
+    public int chunkZ;
+
+    @Label("Sections Filled")
+    @Description("Number of chunk sections containing blocks after the stage ran")
+    public int sectionsFilled;
+
+    /**
+     * fills in the chunk fields and commits the event, if it is enabled and above its threshold
+     */
+    public void commit(Chunk chunk) {
+        this.end();
+        if (!this.shouldCommit()) return;
+        this.chunkX = chunk.getPos().x;
+        this.chunkZ = chunk.getPos().z;
+        int filled = 0;
+        for (ChunkSection section : chunk.getSectionArray()) {
+            if (!section.isEmpty()) filled++;
+        }
+        this.sectionsFilled = filled;
+        this.commit();
+    }
+}
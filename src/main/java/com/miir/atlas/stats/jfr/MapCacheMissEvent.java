@@ -0,0 +1,39 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("atlas.MapCacheMiss")
+@Label("Map Cache Miss")
+@Description("A map sample that could not be answered from already loaded or cached data")
+@Category({"Atlas", "Maps"})
+@StackTrace(false)
+public class MapCacheMissEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("X")
+    @Description("Pixel x coordinate of the miss")
+    public int x;
+
+    @Label("Z")
+    @Description("Pixel z coordinate of the miss")
+    public int z;
+
+    public static void emit(String path, String cache, int x, int z) {
+        MapCacheMissEvent event = new MapCacheMissEvent();
+        if (!event.isEnabled()) return;
+        event.path = path;
+        event.cache = cache;
+        event.x = x;
+        event.z = z;
+        event.commit();
+    }
+}
@@ -0,0 +1,33 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("atlas.MapDecode")
+@Label("Map Decode")
+@Description("Atlas reading and decoding a map image")
+@Category({"Atlas", "Maps"})
+@StackTrace(false)
+public class MapDecodeEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Bytes")
+    @Description("Size of the encoded source file")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,11 @@
+package com.miir.atlas.stats.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("atlas.PopulateNoise")
+@Label("Populate Noise")
+@Description("Atlas filling a chunk with terrain from its heightmap and the noise router")
+public class PopulateNoiseEvent extends ChunkStageEvent {
+}
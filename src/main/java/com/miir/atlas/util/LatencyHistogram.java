@@ -0,0 +1,81 @@
+package com.miir.atlas.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a lock-free histogram of durations with power-of-two microsecond buckets. cheap enough to record every task;
+ * percentiles are approximate (reported as the upper bound of the bucket they fall in).
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 32;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        this.buckets[bucket].increment();
+        this.count.increment();
+        this.totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    public double getMeanMillis() {
+        long count = this.getCount();
+        return count == 0 ? 0 : this.getTotalNanos() / 1e6 / count;
+    }
+
+    /**
+     * @return the upper bound, in milliseconds, of the bucket containing the given percentile (0-1)
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] counts = this.getBucketCounts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) return upperBoundMicros(i) / 1000.0;
+        }
+        return upperBoundMicros(BUCKETS - 1) / 1000.0;
+    }
+
+    /**
+     * @return the number of samples in each bucket; bucket {@code i} holds durations below {@code 2^i} microseconds
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+        this.count.reset();
+        this.totalNanos.reset();
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+}
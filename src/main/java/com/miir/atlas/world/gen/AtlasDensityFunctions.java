@@ -0,0 +1,227 @@
+package com.miir.atlas.world.gen;
+
+import com.miir.atlas.Atlas;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.dynamic.CodecHolder;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.gen.densityfunction.DensityFunction;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+
+/**
+ * density functions that read the maps, so noise settings can build terrain from them and let the noise router cache
+ * and interpolate them like any other input, e.g. with {@code cache_2d} or {@code interpolated}. they read the maps
+ * the dimension's generator and biome source loaded, resolved once on the first sample; reading a map nothing else
+ * uses fails, since it would never be loaded and would read as outside everywhere.
+ */
+public class AtlasDensityFunctions {
+    private static final Codec<Double> OUTSIDE_CODEC = Codec.doubleRange(DimensionType.MIN_COLUMN_HEIGHT, DimensionType.MAX_COLUMN_HEIGHT);
+
+    public static void register() {
+        Registry.register(Registries.DENSITY_FUNCTION_TYPE, Atlas.id("elevation"), Elevation.CODEC.codec());
+        Registry.register(Registries.DENSITY_FUNCTION_TYPE, Atlas.id("water_level"), WaterLevel.CODEC.codec());
+        Registry.register(Registries.DENSITY_FUNCTION_TYPE, Atlas.id("depth_below_surface"), DepthBelowSurface.CODEC.codec());
+    }
+
+    /**
+     * @return the elevation of a map at a block column, or {@code outside} if it is off the map
+     */
+    private static double getElevation(NamespacedMapImage map, AtlasMapInfo ami, int x, int z, double outside) {
+        double elevation = map.getElevation(x, z, ami.horizontalScale(), ami.verticalScale(), ami.startingY());
+        if (elevation == Integer.MIN_VALUE) return outside;
+        return Math.min(Math.max(elevation, DimensionType.MIN_COLUMN_HEIGHT), DimensionType.MAX_COLUMN_HEIGHT);
+    }
+
+    /**
+     * a loaded map, looked up on first use instead of on every sample.
+     */
+    private static final class MapHandle {
+        private final String function;
+        @Nullable
+        private volatile NamespacedMapImage map;
+
+        MapHandle(String function) {
+            this.function = function;
+        }
+
+        NamespacedMapImage get(String path) {
+            NamespacedMapImage map = this.map;
+            if (map == null) {
+                map = Atlas.GRAYSCALE_MAPS.get(Identifier.of(path));
+                if (map == null || map.getRaster() == null) {
+                    String message = "map " + path + " read by " + this.function + " was never loaded, it has to be used by an atlas dimension";
+                    Atlas.LOGGER.error(message);
+                    throw new IllegalStateException(message);
+                }
+                this.map = map;
+            }
+            return map;
+        }
+    }
+
+    /**
+     * the interpolated surface elevation of the heightmap, in blocks.
+     * {@code outside} is the elevation of columns off the map, below the world by default.
+     */
+    static final class Elevation implements DensityFunction.Base {
+        static final CodecHolder<Elevation> CODEC = CodecHolder.of(
+                RecordCodecBuilder.mapCodec(instance -> instance.group(
+                        AtlasMapInfo.REGISTRY_CODEC.fieldOf("map_info").forGetter(Elevation::mapInfo),
+                        OUTSIDE_CODEC.optionalFieldOf("outside", (double) DimensionType.MIN_COLUMN_HEIGHT).forGetter(Elevation::outside))
+                        .apply(instance, Elevation::new)));
+
+        private final RegistryEntry<AtlasMapInfo> mapInfo;
+        private final double outside;
+        private final MapHandle heightmap = new MapHandle("atlas:elevation");
+
+        Elevation(RegistryEntry<AtlasMapInfo> mapInfo, double outside) {
+            this.mapInfo = mapInfo;
+            this.outside = outside;
+        }
+
+        RegistryEntry<AtlasMapInfo> mapInfo() {
+            return this.mapInfo;
+        }
+
+        double outside() {
+            return this.outside;
+        }
+
+        @Override
+        public double sample(NoisePos pos) {
+            AtlasMapInfo ami = this.mapInfo.value();
+            return getElevation(this.heightmap.get(ami.heightmap()), ami, pos.blockX(), pos.blockZ(), this.outside);
+        }
+
+        @Override
+        public double minValue() {
+            return DimensionType.MIN_COLUMN_HEIGHT;
+        }
+
+        @Override
+        public double maxValue() {
+            return DimensionType.MAX_COLUMN_HEIGHT;
+        }
+
+        @Override
+        public CodecHolder<? extends DensityFunction> getCodecHolder() {
+            return CODEC;
+        }
+    }
+
+    /**
+     * the water level of a column, like the generator fills water to: the aquifer map where it is above
+     * {@code sea_level}, otherwise the sea level.
+     * {@code aquifer} is the path of the aquifer map, or empty for the sea level everywhere.
+     */
+    static final class WaterLevel implements DensityFunction.Base {
+        static final CodecHolder<WaterLevel> CODEC = CodecHolder.of(
+                RecordCodecBuilder.mapCodec(instance -> instance.group(
+                        AtlasMapInfo.REGISTRY_CODEC.fieldOf("map_info").forGetter(WaterLevel::mapInfo),
+                        Codec.STRING.optionalFieldOf("aquifer").forGetter(WaterLevel::aquifer),
+                        Codec.intRange(DimensionType.MIN_COLUMN_HEIGHT, DimensionType.MAX_COLUMN_HEIGHT).fieldOf("sea_level").forGetter(WaterLevel::seaLevel))
+                        .apply(instance, WaterLevel::new)));
+
+        private final RegistryEntry<AtlasMapInfo> mapInfo;
+        private final Optional<String> aquifer;
+        private final int seaLevel;
+        private final MapHandle aquiferMap = new MapHandle("atlas:water_level");
+
+        WaterLevel(RegistryEntry<AtlasMapInfo> mapInfo, Optional<String> aquifer, int seaLevel) {
+            this.mapInfo = mapInfo;
+            this.aquifer = aquifer;
+            this.seaLevel = seaLevel;
+        }
+
+        RegistryEntry<AtlasMapInfo> mapInfo() {
+            return this.mapInfo;
+        }
+
+        Optional<String> aquifer() {
+            return this.aquifer;
+        }
+
+        int seaLevel() {
+            return this.seaLevel;
+        }
+
+        @Override
+        public double sample(NoisePos pos) {
+            if (this.aquifer.isEmpty()) return this.seaLevel;
+            NamespacedMapImage map = this.aquiferMap.get(this.aquifer.get());
+            return Math.max(getElevation(map, this.mapInfo.value(), pos.blockX(), pos.blockZ(), this.seaLevel), this.seaLevel);
+        }
+
+        @Override
+        public double minValue() {
+            return this.seaLevel;
+        }
+
+        @Override
+        public double maxValue() {
+            return this.aquifer.isEmpty() ? this.seaLevel : DimensionType.MAX_COLUMN_HEIGHT;
+        }
+
+        @Override
+        public CodecHolder<? extends DensityFunction> getCodecHolder() {
+            return CODEC;
+        }
+    }
+
+    /**
+     * how far a block is below the surface of the heightmap: positive underground, negative in the air. a density
+     * that is solid below the surface is just this function, shifted or scaled.
+     * {@code outside} is the elevation of columns off the map, below the world by default.
+     */
+    static final class DepthBelowSurface implements DensityFunction.Base {
+        static final CodecHolder<DepthBelowSurface> CODEC = CodecHolder.of(
+                RecordCodecBuilder.mapCodec(instance -> instance.group(
+                        AtlasMapInfo.REGISTRY_CODEC.fieldOf("map_info").forGetter(DepthBelowSurface::mapInfo),
+                        OUTSIDE_CODEC.optionalFieldOf("outside", (double) DimensionType.MIN_COLUMN_HEIGHT).forGetter(DepthBelowSurface::outside))
+                        .apply(instance, DepthBelowSurface::new)));
+
+        private final RegistryEntry<AtlasMapInfo> mapInfo;
+        private final double outside;
+        private final MapHandle heightmap = new MapHandle("atlas:depth_below_surface");
+
+        DepthBelowSurface(RegistryEntry<AtlasMapInfo> mapInfo, double outside) {
+            this.mapInfo = mapInfo;
+            this.outside = outside;
+        }
+
+        RegistryEntry<AtlasMapInfo> mapInfo() {
+            return this.mapInfo;
+        }
+
+        double outside() {
+            return this.outside;
+        }
+
+        @Override
+        public double sample(NoisePos pos) {
+            AtlasMapInfo ami = this.mapInfo.value();
+            return getElevation(this.heightmap.get(ami.heightmap()), ami, pos.blockX(), pos.blockZ(), this.outside) - pos.blockY();
+        }
+
+        @Override
+        public double minValue() {
+            return DimensionType.MIN_COLUMN_HEIGHT - DimensionType.MAX_COLUMN_HEIGHT;
+        }
+
+        @Override
+        public double maxValue() {
+            return DimensionType.MAX_COLUMN_HEIGHT - DimensionType.MIN_COLUMN_HEIGHT;
+        }
+
+        @Override
+        public CodecHolder<? extends DensityFunction> getCodecHolder() {
+            return CODEC;
+        }
+    }
+}
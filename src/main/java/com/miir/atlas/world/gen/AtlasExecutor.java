@@ -0,0 +1,170 @@
+package com.miir.atlas.world.gen;
+
+import com.miir.atlas.Atlas;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.util.LatencyHistogram;
+import net.minecraft.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * runs atlas's async generation work and keeps per-stage queue depth, active task and latency counts for it. depending
+ * on {@link AtlasConfig#executor} the work either goes to vanilla's main worker pool or to a pool owned by atlas, so it
+ * can be sized independently of other mods' async work.
+ */
+public class AtlasExecutor implements Executor, AtlasExecutorMBean {
+    private static final String DEFAULT_STAGE = "other";
+    private static AtlasExecutor instance;
+
+    private final Executor backing;
+    private final String description;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    private AtlasExecutor(Executor backing, String description) {
+        this.backing = backing;
+        this.description = description;
+    }
+
+    public static synchronized AtlasExecutor get() {
+        if (instance == null) {
+            instance = create();
+            AtlasStats.registerMBean(instance, "type=Executor");
+            Atlas.LOGGER.info("atlas generation executor: " + instance.description);
+        }
+        return instance;
+    }
+
+    private static AtlasExecutor create() {
+        return switch (AtlasConfig.executor) {
+            case VANILLA -> new AtlasExecutor(Util.getMainWorkerExecutor(), "vanilla main worker pool");
+            case WORK_STEALING -> {
+                int parallelism = AtlasConfig.parallelism;
+                ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    thread.setName("Atlas-Worker-" + thread.getPoolIndex());
+                    return thread;
+                }, (thread, throwable) -> Atlas.LOGGER.error("uncaught exception in " + thread.getName(), throwable), true);
+                yield new AtlasExecutor(pool, "work-stealing pool with " + parallelism + " threads");
+            }
+            case VIRTUAL -> new AtlasExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Atlas-Virtual-", 0).factory()), "virtual threads");
+        };
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(String stage, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, command -> this.execute(stage, command));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.execute(DEFAULT_STAGE, command);
+    }
+
+    public void execute(String stageName, Runnable command) {
+        Stage stage = this.getStage(stageName);
+        long submitted = System.nanoTime();
+        stage.queued.incrementAndGet();
+        try {
+            this.backing.execute(() -> {
+                long started = System.nanoTime();
+                stage.queued.decrementAndGet();
+                stage.active.incrementAndGet();
+                stage.queueLatency.record(started - submitted);
+                try {
+                    command.run();
+                } finally {
+                    stage.active.decrementAndGet();
+                    stage.runLatency.record(System.nanoTime() - started);
+                    stage.completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stage.queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public Stage getStage(String name) {
+        return this.stages.computeIfAbsent(name, Stage::new);
+    }
+
+    public Map<String, Stage> getStages() {
+        return this.stages;
+    }
+
+    @Override
+    public String getDescription() {
+        return this.description;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Stage stage : this.stages.values()) {
+            depth += stage.getQueued();
+        }
+        return depth;
+    }
+
+    @Override
+    public int getActiveTasks() {
+        int active = 0;
+        for (Stage stage : this.stages.values()) {
+            active += stage.getActive();
+        }
+        return active;
+    }
+
+    public static class Stage {
+        private final String name;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram runLatency = new LatencyHistogram();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getQueued() {
+            return this.queued.get();
+        }
+
+        public int getActive() {
+            return this.active.get();
+        }
+
+        public long getCompleted() {
+            return this.completed.sum();
+        }
+
+        /**
+         * time between a task being submitted and a thread picking it up
+         */
+        public LatencyHistogram getQueueLatency() {
+            return this.queueLatency;
+        }
+
+        /**
+         * time spent running the task itself
+         */
+        public LatencyHistogram getRunLatency() {
+            return this.runLatency;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.miir.atlas.world.gen;
+
+public interface AtlasExecutorMBean {
+    String getDescription();
+
+    int getQueueDepth();
+
+    int getActiveTasks();
+}
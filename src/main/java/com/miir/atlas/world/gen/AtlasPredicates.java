@@ -2,6 +2,7 @@ package com.miir.atlas.world.gen;
 
 import com.miir.atlas.Atlas;
 import com.miir.atlas.accessor.MapInfoAccessor;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.registry.Registries;
@@ -13,6 +14,7 @@ import net.minecraft.world.gen.surfacebuilder.MaterialRules;
 public class AtlasPredicates {
     public static void register() {
         Registry.register(Registries.MATERIAL_CONDITION, Atlas.id("above_preliminary_surface"), AboveSurfaceMaterialCondition.CODEC.codec());
+        Registry.register(Registries.MATERIAL_CONDITION, Atlas.id("cave_floor"), CaveFloorMaterialCondition.CODEC.codec());
     }
 
     /**
@@ -52,4 +54,44 @@ public class AtlasPredicates {
             return new AboveSurfacePredicate();
         }
     }
+
+    /**
+     * matches blocks at most {@code depth} blocks below the floor of a mapped cave layer, like a floor check for the
+     * surface of the cave.
+     * @param layer the name of the cave layer, or empty for any layer
+     */
+    record CaveFloorMaterialCondition(String layer, int depth) implements MaterialRules.MaterialCondition {
+        static final CodecHolder<AtlasPredicates.CaveFloorMaterialCondition> CODEC = CodecHolder.of(
+                RecordCodecBuilder.mapCodec(instance -> instance.group(
+                        Codec.STRING.optionalFieldOf("layer", "").forGetter(CaveFloorMaterialCondition::layer),
+                        Codec.INT.optionalFieldOf("depth", 1).forGetter(CaveFloorMaterialCondition::depth))
+                        .apply(instance, AtlasPredicates.CaveFloorMaterialCondition::new)));
+
+        @Override
+        public CodecHolder<? extends MaterialRules.MaterialCondition> codec() {
+            return CODEC;
+        }
+
+        @Override
+        public MaterialRules.BooleanSupplier apply(final MaterialRules.MaterialRuleContext materialRuleContext) {
+            class CaveFloorPredicate
+                    extends MaterialRules.FullLazyAbstractPredicate {
+                CaveFloorPredicate() {
+                    super(materialRuleContext);
+                }
+
+                @Override
+                protected boolean test() {
+                    CaveLayers caveLayers = ((MapInfoAccessor)(Object) materialRuleContext).atlas_getCaveLayers();
+                    if (caveLayers == null) return false;
+                    int x = this.context.blockX;
+                    int z = this.context.blockZ;
+                    int layer = caveLayers.getColumns(x >> 4, z >> 4).getLayerAbove(x & 0xF, this.context.blockY, z & 0xF, CaveFloorMaterialCondition.this.depth);
+                    if (layer < 0) return false;
+                    return CaveFloorMaterialCondition.this.layer.isEmpty() || CaveFloorMaterialCondition.this.layer.equals(caveLayers.getEntry(layer).getName());
+                }
+            }
+            return new CaveFloorPredicate();
+        }
+    }
 }
@@ -1,21 +1,56 @@
 package com.miir.atlas.world.gen;
 
+import com.google.gson.JsonParser;
 import com.miir.atlas.Atlas;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.stats.jfr.MapDecodeEvent;
+import com.miir.atlas.world.gen.raster.DeltaRaster;
+import com.miir.atlas.world.gen.raster.DownsampledRaster;
+import com.miir.atlas.world.gen.raster.IntRaster;
+import com.miir.atlas.world.gen.raster.MapRaster;
+import com.miir.atlas.world.gen.raster.PaletteRaster;
+import com.miir.atlas.world.gen.raster.RasterSource;
+import com.miir.atlas.world.gen.raster.RasterSources;
+import com.miir.atlas.world.gen.raster.RawHeightfield;
+import com.miir.atlas.world.gen.raster.SourcedRaster;
+import com.miir.atlas.world.gen.raster.TileGrid;
+import com.miir.atlas.world.gen.raster.TileGridRaster;
+import com.mojang.serialization.JsonOps;
 import net.minecraft.resource.Resource;
+import net.minecraft.resource.ResourceManager;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.MathHelper;
+import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.awt.image.Raster;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * a map read from a datapack. all of its pixels are held in one immutable {@link MapRaster}, published through a single
+ * volatile field: a raster is fully built before it is published, and never changed afterwards, so worldgen threads
+ * can sample it without locking and always see one consistent map. loading and reloading replace the raster as a
+ * whole and are serialized against each other. the only lazily filled raster, {@link TileGridRaster}, publishes each
+ * tile with a compare-and-set, so readers never block on each other either.
+ */
 public class NamespacedMapImage {
 
-    private static final int EMPTY = -2;
-    private boolean initialized = false;
+    private static final int RELOAD_TILE_SIZE = 64;
 
     public enum Type {
         GRAYSCALE,
@@ -24,132 +59,371 @@ public class NamespacedMapImage {
 
     private final String path;
     private final Type type;
-    private BufferedImage image;
-    private int width;
-    private int height;
-    private int[][] pixels;
+    private volatile MapRaster raster;
+    // only touched by initialize and reload, which hold the lock
+    private byte[] contentHash;
+    private int downsampleFactor = 1;
+    private final List<RegionListener> listeners = new CopyOnWriteArrayList<>();
 
     public NamespacedMapImage(String path, Type type) {
         this.path = path;
         this.type = type;
     }
 
-    public void loadPixelsInRange(int x, int z, boolean grayscale, int radius) {
-        if (x >= this.width || x < 0 || z > this.height || z < 0) return;
-        if (!this.initialized) {
-            throw new IllegalStateException("tried to read from an uninitialized atlas!");
-        }
-        // todo: BufferedImage::getSubImage may be better for on-demand loading optimization
-        this.getOrDownloadPixels(
-                Math.max(0, x - radius),
-                Math.max(0, z - radius),
-                Math.min(this.getWidth(), x + radius),
-                Math.min(this.getHeight(), z + radius), grayscale);
-    }
-
-    private void getOrDownloadPixels(int x0, int z0, int x1, int z1, boolean grayscale) {
-        if (x0 >= this.width) x0 = this.width - 1;
-        if (x1 >= this.width) x1 = this.width - 1;
-        if (z0 >= this.height) z0 = this.height - 1;
-        if (z1 >= this.height) z1 = this.height - 1;
-
-        if (this.pixels[z0][x0] == EMPTY) {
-            try {
-                BufferedImage image = getImage(path, Atlas.SERVER);
-                if (grayscale) {
-                    populateGrayscale(image, x0, z0, x1, z1);
-                } else {
-                    populateColor(image, x0, z0, x1, z1);
-                }
-            } catch (IOException ioe) {
-                Atlas.LOGGER.error("could not find map at " + path + "!");
+    /**
+     * the result of reading a map's source: its pixels, downsampled for the map's scale and possibly shared with other
+     * maps through the {@link RasterStore}, and a hash of the source
+     */
+    private record Loaded(MapRaster raster, byte[] hash) {
+    }
+
+    /**
+     * reads and decodes this map. a raw heightfield ({@code <path>.r16} or {@code <path>.r32} plus a
+     * {@code <path>.json} sidecar) takes precedence over a raster source ({@code <path>.source.json}), then a tile grid
+     * ({@code <path>.tiles.json}), then a png at the same path.
+     * @param unchangedHash if the source still hashes to this, decoding is skipped and null is returned. tile grids
+     *                      are only read lazily, so they are always returned. raster sources are hashed by their
+     *                      manifest alone
+     */
+    @Nullable
+    private Loaded load(ResourceManager manager, @Nullable byte[] unchangedHash) throws IOException {
+        for (RawHeightfield.Format format : RawHeightfield.Format.values()) {
+            String base = this.path.endsWith(format.getExtension()) ? this.path.substring(0, this.path.length() - format.getExtension().length()) : this.path;
+            Optional<Resource> raw = manager.getResource(Identifier.of(base + format.getExtension()));
+            if (raw.isPresent()) {
+                Loaded loaded = this.loadRaw(manager, base, raw.get(), format);
+                return Arrays.equals(loaded.hash(), unchangedHash) ? null : loaded;
             }
         }
+        Optional<Resource> source = manager.getResource(Identifier.of(this.path + ".source.json"));
+        if (source.isPresent()) {
+            return this.loadSourced(manager, source.get(), unchangedHash);
+        }
+        Optional<Resource> manifest = manager.getResource(Identifier.of(this.path + ".tiles.json"));
+        if (manifest.isPresent()) {
+            return this.loadTiled(manager, manifest.get());
+        }
+        byte[] data = this.readSource(manager);
+        byte[] hash = hash(data);
+        if (Arrays.equals(hash, unchangedHash)) return null;
+        MapRaster raster = RasterStore.getOrCreate(hash, this.type, this.downsampleFactor,
+                () -> this.downsample(this.toRaster(RasterStore.getOrDecodeImage(hash, () -> this.decode(data)))));
+        return new Loaded(raster, hash);
     }
 
-    private BufferedImage getImage(String path, MinecraftServer server) throws IOException {
-        try {
-            return this.findImage(path, server);
-        } catch (IOException ioe) {
-            return this.findImage(path + ".png", server);
+    private Loaded loadRaw(ResourceManager manager, String base, Resource resource, RawHeightfield.Format format) throws IOException {
+        if (this.type != Type.GRAYSCALE) {
+            throw new IOException("raw heightfield " + base + format.getExtension() + " can only be used as a grayscale map!");
+        }
+        Identifier sidecarId = Identifier.of(base + ".json");
+        Resource sidecar = manager.getResource(sidecarId)
+                .orElseThrow(() -> new IOException("raw heightfield " + base + format.getExtension() + " needs a sidecar at " + sidecarId + "!"));
+        byte[] sidecarBytes;
+        try (InputStream stream = sidecar.getInputStream()) {
+            sidecarBytes = stream.readAllBytes();
+        }
+        RawHeightfield info = RawHeightfield.CODEC.parse(JsonOps.INSTANCE, JsonParser.parseString(new String(sidecarBytes, StandardCharsets.UTF_8)))
+                .getOrThrow(message -> new IOException("invalid raw heightfield sidecar " + sidecarId + ": " + message));
+        MessageDigest digest = sha256();
+        digest.update(sidecarBytes);
+        MapDecodeEvent event = new MapDecodeEvent();
+        event.begin();
+        MapRaster raster;
+        try (ReadableByteChannel channel = Channels.newChannel(resource.getInputStream())) {
+            raster = info.read(channel, format, digest);
+        }
+        commitDecodeEvent(event, raster.getWidth(), raster.getHeight(), (long) raster.getWidth() * raster.getHeight() * format.getBytesPerSample());
+        byte[] hash = digest.digest();
+        // the hash is only known once the file has been read, but an identical heightfield can still share its raster
+        MapRaster read = raster;
+        return new Loaded(RasterStore.getOrCreate(hash, this.type, this.downsampleFactor, () -> this.downsample(read)), hash);
+    }
+
+    @Nullable
+    private Loaded loadSourced(ResourceManager manager, Resource manifest, @Nullable byte[] unchangedHash) throws IOException {
+        byte[] manifestBytes;
+        try (InputStream stream = manifest.getInputStream()) {
+            manifestBytes = stream.readAllBytes();
+        }
+        byte[] hash = hash(manifestBytes);
+        // the source is only pulled lazily, so an unchanged manifest means an unchanged map
+        if (Arrays.equals(hash, unchangedHash)) return null;
+        RasterSources.Manifest info = RasterSources.MANIFEST_CODEC.parse(JsonOps.INSTANCE, JsonParser.parseString(new String(manifestBytes, StandardCharsets.UTF_8)))
+                .getOrThrow(message -> new IOException("invalid raster source " + this.path + ".source.json: " + message));
+        RasterSource.Context context = new RasterSource.Context() {
+            @Override
+            public String getPath() {
+                return path;
+            }
+
+            @Override
+            public boolean isColor() {
+                return type == Type.COLOR;
+            }
+
+            @Override
+            public ResourceManager getResourceManager() {
+                return manager;
+            }
+
+            @Override
+            public MapRaster decode(byte[] data) throws IOException {
+                return toRaster(NamespacedMapImage.this.decode(data));
+            }
+        };
+        RasterSource source = info.source().create(context);
+        if (source.getWidth() < 2 || source.getHeight() < 2 || source.getTileSize() < 1) {
+            throw new IOException("raster source of map " + this.path + " is " + source.getWidth() + "x" + source.getHeight() + " in tiles of " + source.getTileSize() + ", which is not a map!");
         }
+        return new Loaded(this.downsample(new SourcedRaster(source, this.path, info.cacheTiles())), hash);
     }
 
-    private BufferedImage findImage(String path, MinecraftServer server) throws IOException {
-        if (this.image != null) {
-            return image;
+    private Loaded loadTiled(ResourceManager manager, Resource manifest) throws IOException {
+        byte[] manifestBytes;
+        try (InputStream stream = manifest.getInputStream()) {
+            manifestBytes = stream.readAllBytes();
         }
-        Identifier id = Identifier.of(path);
-        Resource imageResource = server.getResourceManager()
-                .getResource(id)
+        TileGrid grid = TileGrid.CODEC.parse(JsonOps.INSTANCE, JsonParser.parseString(new String(manifestBytes, StandardCharsets.UTF_8)))
+                .getOrThrow(message -> new IOException("invalid tile grid " + this.path + ".tiles.json: " + message));
+        TileGridRaster.TileLoader loader = new TileGridRaster.TileLoader() {
+            @Override
+            public TileGridRaster.Tile load(int row, int column) throws IOException {
+                Optional<Resource> resource = getTileResource(manager, grid, row, column);
+                if (resource.isEmpty()) {
+                    Atlas.LOGGER.warn("map " + path + " has no tile at " + grid.getTilePath(row, column) + ", leaving it empty");
+                    return new TileGridRaster.Tile(TileGridRaster.empty(grid.tileSize()), null);
+                }
+                byte[] data;
+                try (InputStream stream = resource.get().getInputStream()) {
+                    data = stream.readAllBytes();
+                }
+                BufferedImage tile = decode(data);
+                if (tile.getWidth() != grid.tileSize() || tile.getHeight() != grid.tileSize()) {
+                    throw new IOException("tile " + grid.getTilePath(row, column) + " is " + tile.getWidth() + "x" + tile.getHeight() + ", expected " + grid.tileSize() + "x" + grid.tileSize());
+                }
+                return new TileGridRaster.Tile(toRaster(tile), NamespacedMapImage.hash(data));
+            }
+
+            @Override
+            @Nullable
+            public byte[] hash(int row, int column) throws IOException {
+                Optional<Resource> resource = getTileResource(manager, grid, row, column);
+                if (resource.isEmpty()) return null;
+                try (InputStream stream = resource.get().getInputStream()) {
+                    return NamespacedMapImage.hash(stream.readAllBytes());
+                }
+            }
+        };
+        return new Loaded(this.downsample(new TileGridRaster(grid, this.path, loader, AtlasExecutor.get())), hash(manifestBytes));
+    }
+
+    private static Optional<Resource> getTileResource(ResourceManager manager, TileGrid grid, int row, int column) {
+        String tile = grid.getTilePath(row, column);
+        return manager.getResource(Identifier.of(tile)).or(() -> manager.getResource(Identifier.of(tile + ".png")));
+    }
+
+    /**
+     * reads the raw bytes of this map, trying the path as given first and then with a .png extension
+     */
+    private byte[] readSource(ResourceManager manager) throws IOException {
+        Identifier id = Identifier.of(this.path);
+        Resource imageResource = manager.getResource(id)
+                .or(() -> manager.getResource(Identifier.of(this.path + ".png")))
                 .orElse(null);
         if (imageResource == null) {
             throw new IOException("could not find " + id + "! is your image stored at that location?");
         }
-        BufferedImage i = ImageIO.read(imageResource.getInputStream());
-        this.image = i;
-        return i;
+        try (InputStream stream = imageResource.getInputStream()) {
+            return stream.readAllBytes();
+        }
     }
 
-    public void initialize(MinecraftServer server) throws IOException {
-        try {
-            getImage(this.path, server);
-        } catch (IOException e) {
-            getImage(this.path + ".png", server);
+    private BufferedImage decode(byte[] data) throws IOException {
+        MapDecodeEvent event = new MapDecodeEvent();
+        event.begin();
+        BufferedImage i = ImageIO.read(new ByteArrayInputStream(data));
+        if (i == null) {
+            throw new IOException("could not decode " + this.path + "! is it a png?");
         }
-        this.width = image.getWidth();
-        if (this.width % 2 != 0) width -= 1;
-        this.height = image.getHeight();
-        if (this.height % 2 != 0) height -= 1;
-        this.pixels = new int[height][width];
-        for (int[] arr : this.pixels) {
-            Arrays.fill(arr, EMPTY);
+        commitDecodeEvent(event, i.getWidth(), i.getHeight(), data.length);
+        return i;
+    }
+
+    private void commitDecodeEvent(MapDecodeEvent event, int width, int height, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = this.path;
+            event.type = this.type.name();
+            event.width = width;
+            event.height = height;
+            event.bytes = bytes;
+            event.commit();
         }
-        this.initialized = true;
-        this.populate(image);
     }
 
-    private void populate(BufferedImage image) {
-        switch (this.type) {
-            case GRAYSCALE -> populateGrayscale(image);
-            case COLOR -> populateColor(image);
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    private void populateGrayscale(BufferedImage image, int x0, int z0, int x1, int z1) {
-        Raster raster = image.getRaster();
-        for (int x = x0; x < x1; x++) {
-            for (int y = z0; y < z1; y++) {
-                int value = raster.getSample(x, y, 0);
-                this.pixels[y][x] = value;
+    private static byte[] hash(byte[] data) {
+        return sha256().digest(data);
+    }
+
+    public void initialize(MinecraftServer server) throws IOException {
+        this.initialize(server, 1);
+    }
+
+    /**
+     * loads the map for a dimension with the given horizontal scale. below a scale of 1 the map has more pixels than
+     * blocks, so it is downsampled to about one pixel per block. a map shared by dimensions of different scales keeps
+     * enough detail for the finest of them.
+     */
+    public synchronized void initialize(MinecraftServer server, float horizontalScale) throws IOException {
+        int factor = DownsampledRaster.getFactor(horizontalScale);
+        if (this.raster != null && factor >= this.downsampleFactor) return;
+        this.downsampleFactor = factor;
+        long start = AtlasStats.MAP_LOAD.start();
+        Loaded loaded = this.load(server.getResourceManager(), null);
+        this.contentHash = loaded.hash();
+        this.raster = loaded.raster();
+        AtlasStats.MAP_LOAD.stop(start);
+        AtlasStats.onMapLoaded(this, System.nanoTime() - start);
+    }
+
+    /**
+     * loads the map from an already decoded image, e.g. when there is no server resource manager to read it from.
+     */
+    public synchronized void initialize(BufferedImage image) {
+        this.raster = this.toRaster(image);
+    }
+
+    /**
+     * re-reads this map after a datapack reload. nothing happens if the source is byte-for-byte unchanged; otherwise
+     * the new pixels are compared to the loaded ones in {@value #RELOAD_TILE_SIZE}-pixel tiles and only tiles that
+     * differ are swapped in. the patched raster is published all at once, so generation running on other threads
+     * keeps sampling a consistent map.
+     * @return the number of tiles that changed
+     */
+    public synchronized int reload(ResourceManager manager) throws IOException {
+        if (this.raster == null) return 0;
+        Loaded loaded = this.load(manager, this.contentHash);
+        if (loaded == null) return 0;
+        MapRaster current = this.raster;
+        MapRaster fresh = loaded.raster();
+        if (fresh.getWidth() != current.getWidth() || fresh.getHeight() != current.getHeight()) {
+            // the map is centered on 0,0, so a new size would shift every existing chunk
+            Atlas.LOGGER.warn("map " + this.path + " changed size from " + current.getWidth() + "x" + current.getHeight() + " to " + fresh.getWidth() + "x" + fresh.getHeight() + ", restart the server to apply it!");
+            return 0;
+        }
+        List<int[]> changed = new ArrayList<>();
+        if (current instanceof TileGridRaster tiles && fresh instanceof TileGridRaster freshTiles) {
+            // compares the sources of decoded tiles instead of their pixels, so reloading doesn't decode the whole grid
+            TileGridRaster patched = tiles.reload(freshTiles, changed);
+            for (int[] region : changed) {
+                for (RegionListener listener : this.listeners) {
+                    listener.onRegionChanged(this, region[0], region[1], region[2], region[3]);
+                }
+            }
+            this.contentHash = loaded.hash();
+            this.raster = patched;
+            return changed.size();
+        }
+        if (current instanceof SourcedRaster || fresh instanceof SourcedRaster) {
+            // comparing would pull every tile of both sources, the manifest changed so the whole map is swapped
+            for (RegionListener listener : this.listeners) {
+                listener.onRegionChanged(this, 0, 0, current.getWidth(), current.getHeight());
             }
+            this.contentHash = loaded.hash();
+            this.raster = fresh;
+            return 1;
         }
+        for (int z0 = 0; z0 < current.getHeight(); z0 += RELOAD_TILE_SIZE) {
+            int z1 = Math.min(current.getHeight(), z0 + RELOAD_TILE_SIZE);
+            for (int x0 = 0; x0 < current.getWidth(); x0 += RELOAD_TILE_SIZE) {
+                int x1 = Math.min(current.getWidth(), x0 + RELOAD_TILE_SIZE);
+                if (current.regionEquals(fresh, x0, z0, x1, z1)) continue;
+                changed.add(new int[]{x0, z0, x1, z1});
+                for (RegionListener listener : this.listeners) {
+                    listener.onRegionChanged(this, x0, z0, x1, z1);
+                }
+            }
+        }
+        this.contentHash = loaded.hash();
+        if (!changed.isEmpty()) {
+            this.raster = current.patch(fresh, changed);
+        }
+        return changed.size();
     }
 
-    private void populateColor(BufferedImage image, int x0, int z0, int x1, int z1) {
-        for (int x = x0; x < x1; x++) {
-            for (int y = z0; y < z1; y++) {
-                this.pixels[y][x] = 0xFFFFFF & image.getRGB(x, y);
-            }
+    /**
+     * registers a listener for regions of this map that change on reload, so data derived from the pixels can be
+     * invalidated.
+     */
+    public void addRegionListener(RegionListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public interface RegionListener {
+        /**
+         * called before the changed pixels are published. coordinates are in pixels, upper bounds exclusive.
+         */
+        void onRegionChanged(NamespacedMapImage map, int x0, int z0, int x1, int z1);
+    }
+
+    private MapRaster downsample(MapRaster raster) {
+        if (this.downsampleFactor < 2) return raster;
+        if (raster instanceof TileGridRaster || raster instanceof SourcedRaster) {
+            // downsampling would decode every tile up front
+            Atlas.LOGGER.warn("tiled map " + this.path + " is not downsampled for its horizontal scale, every pixel is kept");
+            return raster;
         }
+        long start = System.nanoTime();
+        MapRaster downsampled = DownsampledRaster.of(raster, this.downsampleFactor, this.type == Type.COLOR);
+        Atlas.LOGGER.info("downsampled map " + this.path + " by " + this.downsampleFactor + "x in " + (System.nanoTime() - start) / 1000000 + " ms, " + raster.getMemoryFootprint() / 1024 + " KiB -> " + downsampled.getMemoryFootprint() / 1024 + " KiB");
+        return downsampled;
+    }
+
+    private MapRaster toRaster(BufferedImage image) {
+        IntRaster pixels = new IntRaster(this.decodePixels(image));
+        if (!AtlasConfig.compressMaps) return pixels;
+        return switch (this.type) {
+            case GRAYSCALE -> DeltaRaster.of(pixels);
+            case COLOR -> PaletteRaster.of(pixels);
+        };
     }
 
-    private void populateGrayscale(BufferedImage image) {
+    private int[][] decodePixels(BufferedImage image) {
+        return switch (this.type) {
+            case GRAYSCALE -> decodeGrayscale(image);
+            case COLOR -> decodeColor(image);
+        };
+    }
+
+    private static int[][] decodeGrayscale(BufferedImage image) {
         final int width = image.getWidth();
         final int height = image.getHeight();
-        this.pixels = new int[height][width];
+        int[][] pixels = new int[height][width];
         Raster raster = image.getRaster();
 
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 int value = raster.getSample(x, y, 0);
-                this.pixels[y][x] = value;
+                pixels[y][x] = value;
             }
         }
+        return pixels;
     }
 
-    private void populateColor(BufferedImage image) {
-        int[] data = new int[this.width * this.height];
+    private static int[][] decodeColor(BufferedImage image) {
+        // odd edges are cropped off here already, like the map's width and height
+        final int width = image.getWidth() & ~1;
+        final int height = image.getHeight() & ~1;
+        int[][] pixels = new int[height][width];
+        int[] data = new int[width * height];
         image.getRGB(0, 0, width, height, data, 0, width);
         int x = 0;
         int y = 0;
@@ -158,34 +432,176 @@ public class NamespacedMapImage {
                 x = 0;
                 y++;
             }
-            this.pixels[y][x++] = datum & 0xFFFFFF;
+            pixels[y][x++] = datum & 0xFFFFFF;
         }
+        return pixels;
     }
 
     public float lerp(int truncatedX, float xR, int truncatedZ, float zR) {
+        return lerp(this.raster, truncatedX, xR, truncatedZ, zR);
+    }
+
+    /**
+     * reads everything from one raster, so a reload published halfway through can't mix two versions of the map
+     */
+    private static float lerp(MapRaster raster, int truncatedX, float xR, int truncatedZ, float zR) {
         int dx = 0, dz = 0;
         int u0 = Math.max(0, truncatedX + dx), v0 = Math.max(0, truncatedZ + dz);
-        int u1 = Math.min(getWidth() - 1, u0 + 1), v1 = Math.min(v0 + 1, getHeight() - 1);
+        int u1 = Math.min((raster.getWidth() & ~1) - 1, u0 + 1), v1 = Math.min(v0 + 1, (raster.getHeight() & ~1) - 1);
         float i00, i01, i10, i11;
-        i00 = getPixels()[v0][u0];
-        i01 = getPixels()[v1][u0];
-        i10 = getPixels()[v0][u1];
-        i11 = getPixels()[v1][u1];
+        i00 = raster.getFloat(u0, v0);
+        i01 = raster.getFloat(u0, v1);
+        i10 = raster.getFloat(u1, v0);
+        i11 = raster.getFloat(u1, v1);
         return (float) MathHelper.lerp2(Math.abs(xR), Math.abs(zR), i00, i10, i01, i11);
     }
 
     public double getElevation(int x, int z, float horizontalScale, float verticalScale, int startingY) {
+        MapRaster raster = this.raster;
+        // not loaded, so everything is off the map
+        if (raster == null) return Integer.MIN_VALUE;
+        int width = raster.getWidth() & ~1;
+        int height = raster.getHeight() & ~1;
         float xR = (x / horizontalScale);
         float zR = (z / horizontalScale);
-        xR += this.getWidth() / 2f; // these will always be even numbers
-        zR += this.getHeight() / 2f;
-        if (xR < 0 || zR < 0 || xR >= this.getWidth() || zR >= this.getHeight()) return Integer.MIN_VALUE;
+        xR += width / 2f; // these will always be even numbers
+        zR += height / 2f;
+        if (xR < 0 || zR < 0 || xR >= width || zR >= height) return Integer.MIN_VALUE;
         int truncatedX = (int) Math.floor(xR);
         int truncatedZ = (int) Math.floor(zR);
-        double d = this.lerp(truncatedX, xR - truncatedX, truncatedZ, zR - truncatedZ);
+        double d = lerp(raster, truncatedX, xR - truncatedX, truncatedZ, zR - truncatedZ);
         return verticalScale * d + startingY;
     }
 
+    /**
+     * samples a regular grid of elevations in one pass, e.g. the 16x16 columns of a chunk. results are written in
+     * row-major order ({@code out[offset + dz * sizeX + dx]}) and match {@link #getElevation} exactly, except that
+     * samples outside the map are set to {@code outside}. the whole grid is read from the raster published when the
+     * call starts, so a reload can't change the map halfway through it.
+     * @param stride distance in blocks between two neighbouring samples
+     */
+    public void sampleElevations(int startX, int startZ, int sizeX, int sizeZ, int stride, float horizontalScale, float verticalScale, int startingY, double outside, float[] out, int offset) {
+        MapRaster raster = this.raster;
+        if (raster == null) {
+            // not loaded yet, so every sample is off the map
+            Arrays.fill(out, offset, offset + sizeX * sizeZ, (float) outside);
+            return;
+        }
+        double[] row = new double[sizeX];
+        GridCoordinates grid = new GridCoordinates(raster, startX, startZ, sizeX, sizeZ, stride, horizontalScale);
+        for (int dz = 0; dz < sizeZ; dz++) {
+            sampleRow(raster, grid, dz, verticalScale, startingY, outside, row);
+            int o = offset + dz * sizeX;
+            for (int dx = 0; dx < sizeX; dx++) {
+                out[o + dx] = (float) row[dx];
+            }
+        }
+    }
+
+    /**
+     * same as {@link #sampleElevations(int, int, int, int, int, float, float, int, double, float[], int)}, but
+     * truncates every sample to a block y level.
+     */
+    public void sampleElevations(int startX, int startZ, int sizeX, int sizeZ, int stride, float horizontalScale, float verticalScale, int startingY, double outside, int[] out, int offset) {
+        MapRaster raster = this.raster;
+        if (raster == null) {
+            // not loaded yet, so every sample is off the map
+            Arrays.fill(out, offset, offset + sizeX * sizeZ, (int) outside);
+            return;
+        }
+        double[] row = new double[sizeX];
+        GridCoordinates grid = new GridCoordinates(raster, startX, startZ, sizeX, sizeZ, stride, horizontalScale);
+        for (int dz = 0; dz < sizeZ; dz++) {
+            sampleRow(raster, grid, dz, verticalScale, startingY, outside, row);
+            int o = offset + dz * sizeX;
+            for (int dx = 0; dx < sizeX; dx++) {
+                out[o + dx] = (int) row[dx];
+            }
+        }
+    }
+
+    private static void sampleRow(MapRaster raster, GridCoordinates grid, int dz, float verticalScale, int startingY, double outside, double[] row) {
+        int sizeX = grid.u0.length;
+        int height = raster.getHeight() & ~1;
+        float zR = grid.z[dz] + height / 2f;
+        if (zR < 0 || zR >= height) {
+            Arrays.fill(row, 0, sizeX, outside);
+            return;
+        }
+        int truncatedZ = (int) Math.floor(zR);
+        float fz = Math.abs(zR - truncatedZ);
+        int v0 = Math.max(0, truncatedZ);
+        int v1 = Math.min(v0 + 1, height - 1);
+        int[] u0 = grid.u0;
+        int[] u1 = grid.u1;
+        float[] fx = grid.fx;
+        if (!(raster instanceof IntRaster ints)) {
+            for (int dx = 0; dx < sizeX; dx++) {
+                row[dx] = lerpSample(raster, v0, v1, u0[dx], u1[dx], fx[dx], fz, verticalScale, startingY, outside);
+            }
+            return;
+        }
+        int[] r0 = ints.getRow(v0);
+        int[] r1 = ints.getRow(v1);
+        // unrolled by hand; the per-sample work is only four loads and three lerps, so loop overhead matters here
+        int dx = 0;
+        for (; dx + 3 < sizeX; dx += 4) {
+            row[dx] = lerpSample(r0, r1, u0[dx], u1[dx], fx[dx], fz, verticalScale, startingY, outside);
+            row[dx + 1] = lerpSample(r0, r1, u0[dx + 1], u1[dx + 1], fx[dx + 1], fz, verticalScale, startingY, outside);
+            row[dx + 2] = lerpSample(r0, r1, u0[dx + 2], u1[dx + 2], fx[dx + 2], fz, verticalScale, startingY, outside);
+            row[dx + 3] = lerpSample(r0, r1, u0[dx + 3], u1[dx + 3], fx[dx + 3], fz, verticalScale, startingY, outside);
+        }
+        for (; dx < sizeX; dx++) {
+            row[dx] = lerpSample(r0, r1, u0[dx], u1[dx], fx[dx], fz, verticalScale, startingY, outside);
+        }
+    }
+
+    private static double lerpSample(int[] r0, int[] r1, int u0, int u1, float fx, float fz, float verticalScale, int startingY, double outside) {
+        if (u0 < 0) return outside;
+        float d = (float) MathHelper.lerp2(fx, fz, r0[u0], r0[u1], r1[u0], r1[u1]);
+        return verticalScale * (double) d + startingY;
+    }
+
+    private static double lerpSample(MapRaster raster, int v0, int v1, int u0, int u1, float fx, float fz, float verticalScale, int startingY, double outside) {
+        if (u0 < 0) return outside;
+        float d = (float) MathHelper.lerp2(fx, fz, raster.getFloat(u0, v0), raster.getFloat(u1, v0), raster.getFloat(u0, v1), raster.getFloat(u1, v1));
+        return verticalScale * (double) d + startingY;
+    }
+
+    /**
+     * per-column texel coordinates for a sample grid, computed once per call instead of once per sample. columns that
+     * fall outside the map get a negative {@code u0}.
+     */
+    private static final class GridCoordinates {
+        final int[] u0;
+        final int[] u1;
+        final float[] fx;
+        final float[] z;
+
+        GridCoordinates(MapRaster raster, int startX, int startZ, int sizeX, int sizeZ, int stride, float horizontalScale) {
+            this.u0 = new int[sizeX];
+            this.u1 = new int[sizeX];
+            this.fx = new float[sizeX];
+            this.z = new float[sizeZ];
+            int width = raster.getWidth() & ~1;
+            for (int dx = 0; dx < sizeX; dx++) {
+                float xR = ((startX + dx * stride) / horizontalScale);
+                xR += width / 2f;
+                if (xR < 0 || xR >= width) {
+                    this.u0[dx] = -1;
+                    continue;
+                }
+                int truncatedX = (int) Math.floor(xR);
+                this.fx[dx] = Math.abs(xR - truncatedX);
+                this.u0[dx] = Math.max(0, truncatedX);
+                this.u1[dx] = Math.min(width - 1, this.u0[dx] + 1);
+            }
+            for (int dz = 0; dz < sizeZ; dz++) {
+                this.z[dz] = ((startZ + dz * stride) / horizontalScale);
+            }
+        }
+    }
+
     public String getPath() {
         return path;
     }
@@ -194,16 +610,49 @@ public class NamespacedMapImage {
         return type;
     }
 
+    /**
+     * @return the width the map is centered on: the raster's, cropped to an even number
+     */
     public int getWidth() {
-        return width;
+        MapRaster raster = this.raster;
+        return raster == null ? 0 : raster.getWidth() & ~1;
     }
 
     public int getHeight() {
-        return height;
+        MapRaster raster = this.raster;
+        return raster == null ? 0 : raster.getHeight() & ~1;
     }
 
-    public int[][] getPixels() {
-        return pixels;
+    /**
+     * @return the raw pixel value: a packed rgb color for color maps, the (truncated) value for grayscale maps
+     * @throws IllegalStateException if the map isn't loaded, check {@link #getWidth()} first
+     */
+    public int getPixel(int x, int z) {
+        MapRaster raster = this.raster;
+        if (raster == null) {
+            throw new IllegalStateException("map " + this.path + " is sampled before it was loaded");
+        }
+        return raster.get(x, z);
+    }
+
+    public MapRaster getRaster() {
+        return this.raster;
+    }
+
+    /**
+     * @return the sha-256 of the source the current pixels were read from, or null if the map isn't loaded
+     */
+    @Nullable
+    public byte[] getContentHash() {
+        return this.contentHash;
+    }
+
+    /**
+     * @return approximate heap usage of this map in bytes
+     */
+    public long getMemoryFootprint() {
+        MapRaster raster = this.raster;
+        return raster == null ? 0 : raster.getMemoryFootprint();
     }
 
 }
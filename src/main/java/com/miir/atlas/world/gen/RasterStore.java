@@ -0,0 +1,71 @@
+package com.miir.atlas.world.gen;
+
+import com.miir.atlas.world.gen.raster.MapRaster;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the rasters of all loaded maps, keyed by the hash of their source instead of their path. maps with byte-for-byte the
+ * same source share one raster, whatever path they were loaded from, and an image used both as a grayscale and a color
+ * map is only decoded once, then projected once per type.
+ * <p>
+ * rasters are held weakly, so one that no map uses anymore after a reload can be collected. decoded images are only
+ * needed while maps are being loaded and are dropped with {@link #finishLoading}.
+ */
+public final class RasterStore {
+    private static final Map<Key, WeakReference<MapRaster>> RASTERS = new ConcurrentHashMap<>();
+    private static final Map<String, BufferedImage> IMAGES = new ConcurrentHashMap<>();
+
+    private RasterStore() {
+    }
+
+    /**
+     * @param downsampleFactor how many source pixels are merged into one, see {@link NamespacedMapImage#initialize}
+     */
+    private record Key(String hash, NamespacedMapImage.Type type, int downsampleFactor) {
+    }
+
+    public interface Decoder<T> {
+        T decode() throws IOException;
+    }
+
+    static MapRaster getOrCreate(byte[] hash, NamespacedMapImage.Type type, int downsampleFactor, Decoder<MapRaster> decoder) throws IOException {
+        Key key = new Key(HexFormat.of().formatHex(hash), type, downsampleFactor);
+        WeakReference<MapRaster> reference = RASTERS.get(key);
+        MapRaster raster = reference == null ? null : reference.get();
+        if (raster != null) return raster;
+        raster = decoder.decode();
+        RASTERS.put(key, new WeakReference<>(raster));
+        RASTERS.values().removeIf(r -> r.get() == null);
+        return raster;
+    }
+
+    static BufferedImage getOrDecodeImage(byte[] hash, Decoder<BufferedImage> decoder) throws IOException {
+        String key = HexFormat.of().formatHex(hash);
+        BufferedImage image = IMAGES.get(key);
+        if (image != null) return image;
+        image = decoder.decode();
+        IMAGES.put(key, image);
+        return image;
+    }
+
+    /**
+     * drops the decoded images kept for maps that might still be loaded from them, once all maps are loaded
+     */
+    public static void finishLoading() {
+        IMAGES.clear();
+    }
+
+    /**
+     * @return the number of distinct rasters in use
+     */
+    public static int size() {
+        RASTERS.values().removeIf(r -> r.get() == null);
+        return RASTERS.size();
+    }
+}
@@ -1,13 +1,19 @@
 package com.miir.atlas.world.gen.biome.source;
 
 import com.miir.atlas.Atlas;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.stats.jfr.MapCacheMissEvent;
 import com.miir.atlas.world.gen.AtlasMapInfo;
 import com.miir.atlas.world.gen.NamespacedMapImage;
 import com.miir.atlas.world.gen.biome.BiomeEntry;
+import com.miir.atlas.world.gen.cave.CaveLayerEntry;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
@@ -17,28 +23,45 @@ import net.minecraft.util.Identifier;
 import net.minecraft.util.dynamic.Codecs;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.source.BiomeCoords;
 import net.minecraft.world.biome.source.BiomeSource;
 import net.minecraft.world.biome.source.util.MultiNoiseUtil;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Stream;
 
 public class AtlasBiomeSource extends BiomeSource {
     public static final RegistryKey<Biome> EMPTY_BIOME = RegistryKey.of(RegistryKeys.BIOME, Atlas.id("empty"));
     private static final Identifier EMPTY = Atlas.id("_not_impl");
+    private static final int CLOSEST_COLOR_SLOTS = 4096;
     private final NamespacedMapImage image;
     private final List<BiomeEntry> biomeEntries;
     private final RegistryEntry<Biome> defaultBiome;
     private final RegistryEntry<AtlasMapInfo> mapInfo;
     private final Optional<MultiNoiseUtil.Entries<RegistryEntry<Biome>>> caveBiomes;
     private final Int2ObjectArrayMap<RegistryEntry<Biome>> biomeToColor = new Int2ObjectArrayMap<>();
+    // index of each configured color's entry in the biome palette
+    private final Int2IntArrayMap colorIndices = new Int2IntArrayMap();
+    // map colors without an exact biome entry, resolved to their nearest configured color: each slot packs a color in
+    // the high and its closest color in the low half. colors that collide overwrite each other and are resolved again
+    private final AtomicLongArray closestColors = new AtomicLongArray(CLOSEST_COLOR_SLOTS);
+    private final List<RegistryEntry<Biome>> palette;
     private final int belowDepth;
+    private final float biomeMapScale;
+    private final Optional<Origin> biomeMapOrigin;
+    @Nullable
+    private volatile CaveLayers caveLayers;
+    // heightmap pixels, relative to its center, of the biome map's north-west corner when it has an origin
+    private int shiftX;
+    private int shiftZ;
 
     //    todo: read the mapInfo from the CG (probably harder to do than the surface rule)
-    protected AtlasBiomeSource(String path, List<BiomeEntry> biomeToColor, Optional<MultiNoiseUtil.Entries<RegistryEntry<Biome>>> caveBiomes, Optional<RegistryEntry<Biome>> defaultBiome, RegistryEntry<AtlasMapInfo> mapInfo, int belowDepth) {
+    protected AtlasBiomeSource(String path, List<BiomeEntry> biomeToColor, Optional<MultiNoiseUtil.Entries<RegistryEntry<Biome>>> caveBiomes, Optional<RegistryEntry<Biome>> defaultBiome, RegistryEntry<AtlasMapInfo> mapInfo, int belowDepth, float biomeMapScale, Optional<Origin> biomeMapOrigin) {
         super();
         this.image = Atlas.getOrCreateMap(path, NamespacedMapImage.Type.COLOR);
         this.biomeEntries = biomeToColor;
@@ -46,9 +69,14 @@ public class AtlasBiomeSource extends BiomeSource {
         this.defaultBiome = defaultBiome.orElse(this.biomeEntries.get(0).getTopBiome());
         this.mapInfo = mapInfo;
         this.belowDepth = belowDepth;
-        for (BiomeEntry entry : this.biomeEntries) {
+        this.biomeMapScale = biomeMapScale;
+        this.biomeMapOrigin = biomeMapOrigin;
+        for (int i = 0; i < this.biomeEntries.size(); i++) {
+            BiomeEntry entry = this.biomeEntries.get(i);
             this.biomeToColor.put(entry.getColor(), entry.getTopBiome());
+            this.colorIndices.put(entry.getColor(), i);
         }
+        this.palette = Stream.concat(this.biomeEntries.stream().map(BiomeEntry::getTopBiome), Stream.of(this.defaultBiome)).toList();
     }
 
     //    I HATE OOP I HATE OOP I HATE OOP
@@ -82,7 +110,13 @@ public class AtlasBiomeSource extends BiomeSource {
                             .forGetter(AtlasBiomeSource::getMapInfo),
                     Codec.INT
                             .optionalFieldOf("below_depth", Integer.MAX_VALUE)
-                            .forGetter(AtlasBiomeSource::getBelowDepth)
+                            .forGetter(AtlasBiomeSource::getBelowDepth),
+                    Codec.floatRange(Float.MIN_NORMAL, Float.MAX_VALUE)
+                            .optionalFieldOf("biome_map_scale", 1f)
+                            .forGetter(AtlasBiomeSource::getBiomeMapScale),
+                    Origin.CODEC
+                            .optionalFieldOf("biome_map_origin")
+                            .forGetter(AtlasBiomeSource::getBiomeMapOrigin)
             ).apply(instance, AtlasBiomeSource::new)
     );
 
@@ -94,6 +128,24 @@ public class AtlasBiomeSource extends BiomeSource {
         return this.belowDepth;
     }
 
+    private float getBiomeMapScale() {
+        return this.biomeMapScale;
+    }
+
+    private Optional<Origin> getBiomeMapOrigin() {
+        return this.biomeMapOrigin;
+    }
+
+    /**
+     * where the north-west corner of the biome map lies on the heightmap, in heightmap pixels from its north-west corner
+     */
+    private record Origin(int x, int z) {
+        static final Codec<Origin> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Codec.INT.fieldOf("x").forGetter(Origin::x),
+                Codec.INT.fieldOf("z").forGetter(Origin::z)
+        ).apply(instance, Origin::new));
+    }
+
     public List<BiomeEntry> getBiomeEntries() {
         return this.biomeEntries;
     }
@@ -110,6 +162,17 @@ public class AtlasBiomeSource extends BiomeSource {
         return this.image.getPath();
     }
 
+    public NamespacedMapImage getBiomeMap() {
+        return this.image;
+    }
+
+    /**
+     * gives this biome source the cave layers of the generator it belongs to, or null if it has none
+     */
+    public void setCaveLayers(@Nullable CaveLayers caveLayers) {
+        this.caveLayers = caveLayers;
+    }
+
     @Override
     protected MapCodec<AtlasBiomeSource> getCodec() {
         return CODEC;
@@ -126,8 +189,16 @@ public class AtlasBiomeSource extends BiomeSource {
     }
 
     public void findBiomeMap(MinecraftServer server, String levelName) throws IOException {
-        this.image.initialize(server);
-        Atlas.LOGGER.info("found biomes for dimension " + levelName + " in a " + this.image.getWidth() + "x" + this.image.getHeight() + " map: " + getPath());
+        AtlasMapInfo ami = this.mapInfo.value();
+        // a coarser biome map covers more blocks per pixel, so it only needs to be downsampled for what's left
+        this.image.initialize(server, ami.horizontalScale() * this.biomeMapScale);
+        if (this.biomeMapOrigin.isPresent()) {
+            NamespacedMapImage heightmap = Atlas.getOrCreateMap(ami.heightmap(), NamespacedMapImage.Type.GRAYSCALE);
+            heightmap.initialize(server, ami.horizontalScale());
+            this.shiftX = this.biomeMapOrigin.get().x() - heightmap.getWidth() / 2;
+            this.shiftZ = this.biomeMapOrigin.get().z() - heightmap.getHeight() / 2;
+        }
+        Atlas.LOGGER.info("found biomes for dimension " + levelName + " in a " + this.image.getWidth() + "x" + this.image.getHeight() + " map: " + getPath() + (this.biomeMapScale == 1 ? "" : ", " + this.biomeMapScale + " heightmap pixels per pixel"));
     }
 
     @Override
@@ -146,9 +217,28 @@ public class AtlasBiomeSource extends BiomeSource {
 
     @Override
     public RegistryEntry<Biome> getBiome(int x, int y, int z, MultiNoiseUtil.MultiNoiseSampler noise) {
+        long start = AtlasStats.GET_BIOME.start();
+        try {
+            return this.sampleBiome(x, y, z, noise);
+        } finally {
+            AtlasStats.GET_BIOME.stop(start);
+        }
+    }
+
+    private RegistryEntry<Biome> sampleBiome(int x, int y, int z, MultiNoiseUtil.MultiNoiseSampler noise) {
         AtlasMapInfo ami = this.mapInfo.value();
         float horizontalScale = ami.horizontalScale();
         Identifier heightmapPath = ami.heightmap();
+        // mapped cave layers paint their own biomes
+        CaveLayers caveLayers = this.caveLayers;
+        if (caveLayers != null) {
+            CaveLayerEntry layer = caveLayers.getLayer(x << 2, y << 2, z << 2);
+            if (layer != null && layer.getBiomes() != null) {
+                NamespacedMapImage biomes = layer.getBiomes();
+                RegistryEntry<Biome> biome = this.getMappedBiome(biomes, Math.round((x << 2) / horizontalScale) + biomes.getWidth() / 2, Math.round((z << 2) / horizontalScale) + biomes.getHeight() / 2);
+                if (biome != null) return biome;
+            }
+        }
         // short-circuit with cave biomes
         double elevation = Atlas.getOrCreateMap(heightmapPath, NamespacedMapImage.Type.GRAYSCALE).getElevation(x << 2, z << 2, horizontalScale, ami.verticalScale(), ami.startingY());
         if (y << 2 < (elevation - this.belowDepth)) {
@@ -159,24 +249,104 @@ public class AtlasBiomeSource extends BiomeSource {
                 }
             }
         }
-        x <<= 2;
-        z <<= 2;
-        x = Math.round(x / horizontalScale);
-        z = Math.round(z / horizontalScale);
-        x += this.image.getWidth() / 2;
-        z += this.image.getHeight() / 2;
-        if (x < 0 || z < 0 || x >= this.image.getWidth() || z >= this.image.getHeight()) return this.defaultBiome;
-//        this.image.loadPixelsInRange(x, z, false, Atlas.GEN_RADIUS);
-        int color = this.image.getPixels()[z][x];
+        RegistryEntry<Biome> biome = this.getMappedBiome(this.image, this.toBiomeMapX(Math.round((x << 2) / horizontalScale)), this.toBiomeMapZ(Math.round((z << 2) / horizontalScale)));
+        return biome == null ? this.defaultBiome : biome;
+    }
+
+    /**
+     * @param x a heightmap pixel, relative to the heightmap's center
+     * @return the biome map pixel it lies in
+     */
+    private int toBiomeMapX(int x) {
+        if (this.biomeMapOrigin.isPresent()) return this.scaleToBiomeMap(x - this.shiftX);
+        // centered on the heightmap, like the heightmap is on 0,0
+        return this.scaleToBiomeMap(x) + this.image.getWidth() / 2;
+    }
+
+    private int toBiomeMapZ(int z) {
+        if (this.biomeMapOrigin.isPresent()) return this.scaleToBiomeMap(z - this.shiftZ);
+        return this.scaleToBiomeMap(z) + this.image.getHeight() / 2;
+    }
+
+    private int scaleToBiomeMap(int pixels) {
+        return this.biomeMapScale == 1 ? pixels : (int) Math.floor(pixels / this.biomeMapScale);
+    }
+
+    /**
+     * @return the biome painted on a map at the given pixel, or null if it is outside of it
+     */
+    private RegistryEntry<Biome> getMappedBiome(NamespacedMapImage map, int x, int z) {
+        if (x < 0 || z < 0 || x >= map.getWidth() || z >= map.getHeight()) return null;
+        int color = map.getPixel(x, z);
         RegistryEntry<Biome> biome = this.biomeToColor.get(color);
-        if (biome == null) {
-            return this.getClosest(color);
-        } else {
+        if (biome != null) {
+            AtlasStats.BIOME_COLORS.hit();
             return biome;
         }
+        AtlasStats.BIOME_COLORS.miss();
+        return this.biomeToColor.getOrDefault(this.getClosestColor(map, color, x, z), this.defaultBiome);
+    }
+
+    /**
+     * @return the biomes that {@link #sampleBiomes} points into: the biome of each entry of {@code biomes}, in order,
+     * followed by the default biome
+     */
+    public List<RegistryEntry<Biome>> getBiomePalette() {
+        return this.palette;
+    }
+
+    /**
+     * writes the index in {@link #getBiomePalette()} of the surface biome painted on the biome map for a grid of
+     * columns, row-major ({@code out[dz * sizeX + dx]}). columns outside the map get the default biome. cave biomes
+     * and cave layers are left out. like {@link #getBiome}, every column reads the biome of the 4x4 quart it lies in,
+     * so this is the biome a generated chunk stores there. safe to call from any thread.
+     * @param stride distance in blocks between two neighbouring columns
+     */
+    public void sampleBiomes(int startX, int startZ, int sizeX, int sizeZ, int stride, int[] out) {
+        float horizontalScale = this.mapInfo.value().horizontalScale();
+        NamespacedMapImage map = this.image;
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int fallback = this.palette.size() - 1;
+        int[] xs = new int[sizeX];
+        for (int dx = 0; dx < sizeX; dx++) {
+            xs[dx] = this.toBiomeMapX(Math.round(BiomeCoords.toBlock(BiomeCoords.fromBlock(startX + dx * stride)) / horizontalScale));
+        }
+        for (int dz = 0; dz < sizeZ; dz++) {
+            int z = this.toBiomeMapZ(Math.round(BiomeCoords.toBlock(BiomeCoords.fromBlock(startZ + dz * stride)) / horizontalScale));
+            int o = dz * sizeX;
+            for (int dx = 0; dx < sizeX; dx++) {
+                int x = xs[dx];
+                if (x < 0 || z < 0 || x >= width || z >= height) {
+                    out[o + dx] = fallback;
+                    continue;
+                }
+                int color = map.getPixel(x, z);
+                int index = this.colorIndices.getOrDefault(color, -1);
+                if (index < 0) {
+                    index = this.colorIndices.getOrDefault(this.getClosestColor(map, color, x, z), fallback);
+                }
+                out[o + dx] = index;
+            }
+        }
+    }
+
+    private int getClosestColor(NamespacedMapImage map, int color, int x, int z) {
+        int slot = HashCommon.mix(color) & (CLOSEST_COLOR_SLOTS - 1);
+        long cached = this.closestColors.get(slot);
+        // an empty slot reads as color 0, which just gets resolved again
+        if (cached != 0 && (int) (cached >>> 32) == color) {
+            AtlasStats.BIOME_CLOSEST_CACHE.hit();
+            return (int) cached;
+        }
+        AtlasStats.BIOME_CLOSEST_CACHE.miss();
+        MapCacheMissEvent.emit(map.getPath(), "closest_color", x, z);
+        int closest = this.getClosest(color);
+        this.closestColors.set(slot, (long) color << 32 | closest & 0xFFFFFFFFL);
+        return closest;
     }
 
-    private RegistryEntry<Biome> getClosest(int color) {
+    private int getClosest(int color) {
         double minDist = -1;
         int closest = -1;
         int r = color & 0xFF0000 >> 16;
@@ -190,6 +360,6 @@ public class AtlasBiomeSource extends BiomeSource {
                 closest = c;
             }
         }
-        return this.biomeToColor.getOrDefault(closest, defaultBiome);
+        return closest;
     }
 }
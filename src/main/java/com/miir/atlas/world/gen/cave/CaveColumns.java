@@ -0,0 +1,125 @@
+package com.miir.atlas.world.gen.cave;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the cave layers of one chunk, as a sorted list of air intervals per column; the solid intervals are the gaps
+ * between them. built once per chunk from every layer's floor and ceiling maps, so generation never has to sample a
+ * cave map per block: looking up a block is a binary search over its column's intervals.
+ * <p>
+ * where layers overlap, the lower floor wins and the other layer is cut off at its ceiling.
+ */
+public class CaveColumns {
+    private static final int NONE = Integer.MIN_VALUE;
+
+    // the intervals of column c (indexed by (z << 4) | x) are [starts[c], starts[c + 1])
+    private final int[] starts;
+    private final int[] bottoms;
+    private final int[] tops;
+    private final byte[] layers;
+
+    private CaveColumns(int[] starts, int[] bottoms, int[] tops, byte[] layers) {
+        this.starts = starts;
+        this.bottoms = bottoms;
+        this.tops = tops;
+        this.layers = layers;
+    }
+
+    public static CaveColumns sample(ChunkPos pos, List<CaveLayerEntry> entries, float horizontalScale) {
+        int count = entries.size();
+        int[][] floors = new int[count][256];
+        int[][] ceilings = new int[count][256];
+        for (int l = 0; l < count; l++) {
+            CaveLayerEntry entry = entries.get(l);
+            entry.getFloor().sampleElevations(pos.getStartX(), pos.getStartZ(), 16, 16, 1, horizontalScale, entry.verticalScale(), entry.floorHeight(), NONE, floors[l], 0);
+            entry.getCeiling().sampleElevations(pos.getStartX(), pos.getStartZ(), 16, 16, 1, horizontalScale, entry.verticalScale(), entry.ceilingHeight(), NONE, ceilings[l], 0);
+        }
+        int[] starts = new int[257];
+        int[] bottoms = new int[256 * count];
+        int[] tops = new int[256 * count];
+        byte[] layers = new byte[256 * count];
+        int n = 0;
+        for (int c = 0; c < 256; c++) {
+            starts[c] = n;
+            for (int l = 0; l < count; l++) {
+                int bottom = floors[l][c];
+                int top = ceilings[l][c];
+                if (bottom == NONE || top == NONE || bottom >= top) continue;
+                // insertion sort by floor, there are only ever a handful of layers
+                int i = n;
+                while (i > starts[c] && bottoms[i - 1] > bottom) {
+                    bottoms[i] = bottoms[i - 1];
+                    tops[i] = tops[i - 1];
+                    layers[i] = layers[i - 1];
+                    i--;
+                }
+                bottoms[i] = bottom;
+                tops[i] = top;
+                layers[i] = (byte) l;
+                n++;
+            }
+            // cut overlapping intervals so the column stays disjoint and sorted
+            int kept = starts[c];
+            for (int i = starts[c]; i < n; i++) {
+                int bottom = kept > starts[c] ? Math.max(bottoms[i], tops[kept - 1]) : bottoms[i];
+                if (bottom >= tops[i]) continue;
+                bottoms[kept] = bottom;
+                tops[kept] = tops[i];
+                layers[kept] = layers[i];
+                kept++;
+            }
+            n = kept;
+        }
+        starts[256] = n;
+        return new CaveColumns(starts, Arrays.copyOf(bottoms, n), Arrays.copyOf(tops, n), Arrays.copyOf(layers, n));
+    }
+
+    public boolean isEmpty() {
+        return this.starts[256] == 0;
+    }
+
+    /**
+     * @param x the block x within the chunk
+     * @param z the block z within the chunk
+     * @return the index of the cave layer the block is hollowed out by, or -1 if it isn't in a cave
+     */
+    public int getLayer(int x, int y, int z) {
+        int c = z << 4 | x;
+        int i = this.floorBelow(c, y);
+        return i >= 0 && y < this.tops[i] ? this.layers[i] : -1;
+    }
+
+    /**
+     * @return the index of the cave layer whose floor is the lowest one above the block, or -1 if there is none within
+     * {@code depth} blocks
+     */
+    public int getLayerAbove(int x, int y, int z, int depth) {
+        int c = z << 4 | x;
+        int below = this.floorBelow(c, y);
+        int i = below >= 0 ? below + 1 : this.starts[c];
+        if (i >= this.starts[c + 1] || this.bottoms[i] - y > depth) return -1;
+        return this.layers[i];
+    }
+
+    /**
+     * @return the last interval in column {@code c} whose floor is at or below {@code y}, or -1 if there is none
+     */
+    private int floorBelow(int c, int y) {
+        int low = this.starts[c];
+        int high = this.starts[c + 1] - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.bottoms[mid] <= y) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+}
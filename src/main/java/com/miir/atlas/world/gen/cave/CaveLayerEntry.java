@@ -4,23 +4,29 @@ import com.miir.atlas.Atlas;
 import com.miir.atlas.world.gen.NamespacedMapImage;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.server.MinecraftServer;
 import org.jetbrains.annotations.Nullable;
 
-@Deprecated
+import java.io.IOException;
+
+/**
+ * a mapped cave layer: everything between the floor map's elevation and the ceiling map's elevation is hollowed out.
+ * a map value {@code v} is at y {@code floor_height + vertical_scale * v} (and likewise for the ceiling), so a column
+ * whose floor is at or above its ceiling has no cave. the optional biome map uses the biome source's colors.
+ */
 public class CaveLayerEntry {
     private final NamespacedMapImage ceiling;
     private final NamespacedMapImage floor;
     private NamespacedMapImage biomes;
-    private NamespacedMapImage aquifer;
-    private final int verticalScale;
-    private final int floorHeight ;
+    private final float verticalScale;
+    private final int floorHeight;
     private final int ceilingHeight;
     private final String biomePath;
     private final String floorPath;
     private final String ceilingPath;
     private final String name;
 
-    public CaveLayerEntry(String name, String ceilingPath, String floorPath, String biomePath, int ceilingHeight, int floorHeight, int verticalScale) {
+    public CaveLayerEntry(String name, String ceilingPath, String floorPath, String biomePath, int ceilingHeight, int floorHeight, float verticalScale) {
         this.name = name;
         this.verticalScale = verticalScale;
         this.floorHeight = floorHeight;
@@ -41,11 +47,20 @@ public class CaveLayerEntry {
             Codec.STRING.optionalFieldOf("biomes", "").forGetter(CaveLayerEntry::biomePath),
             Codec.INT.fieldOf("ceiling_height").forGetter(CaveLayerEntry::ceilingHeight),
             Codec.INT.fieldOf("floor_height").forGetter(CaveLayerEntry::floorHeight),
-            Codec.INT.optionalFieldOf("vertical_scale", 0).forGetter(CaveLayerEntry::verticalScale)
+            Codec.FLOAT.optionalFieldOf("vertical_scale", 1f).forGetter(CaveLayerEntry::verticalScale)
             ).apply(instance, CaveLayerEntry::new));
 
-    private String getName() {return this.name;}
-    private int verticalScale() {return this.verticalScale;}
+    public void initialize(MinecraftServer server, String levelName, float horizontalScale) throws IOException {
+        this.floor.initialize(server, horizontalScale);
+        this.ceiling.initialize(server, horizontalScale);
+        if (this.biomes != null) {
+            this.biomes.initialize(server, horizontalScale);
+        }
+        Atlas.LOGGER.info("found cave layer " + (this.name.isEmpty() ? this.floorPath : this.name) + " for dimension " + levelName + " in a " + this.floor.getWidth() + "x" + this.floor.getHeight() + " map");
+    }
+
+    public String getName() {return this.name;}
+    public float verticalScale() {return this.verticalScale;}
     private String biomePath() {return this.biomePath;}
     private String floorPath() {return this.floorPath;}
     private String ceilingPath() {return this.ceilingPath;}
@@ -56,5 +71,4 @@ public class CaveLayerEntry {
     public NamespacedMapImage getCeiling() {return this.ceiling;}
     public NamespacedMapImage getFloor() {return this.floor;}
     @Nullable public NamespacedMapImage getBiomes() {return this.biomes;}
-    @Nullable public NamespacedMapImage getAquifer() {return this.aquifer;}
 }
@@ -0,0 +1,71 @@
+package com.miir.atlas.world.gen.cave;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.util.math.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * the cave layers of one dimension, with the {@link CaveColumns} of recently generated chunks. a chunk's columns are
+ * built when its biomes are placed and reused by noise and surface generation.
+ * <p>
+ * the generator hands its layers to its own biome source and surface rules, so dimensions that share a map info
+ * never see each other's caves. recent columns are kept in a direct-mapped cache that is read without locking; a
+ * chunk that lost its slot to another one is just built again.
+ */
+public class CaveLayers {
+    private static final int CACHE_SIZE = 1024;
+
+    private final List<CaveLayerEntry> entries;
+    private final float horizontalScale;
+    private final AtomicReferenceArray<Cached> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    public CaveLayers(List<CaveLayerEntry> entries, float horizontalScale) {
+        if (entries.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("a dimension can have at most " + Byte.MAX_VALUE + " cave layers!");
+        }
+        this.entries = entries;
+        this.horizontalScale = horizontalScale;
+    }
+
+    private record Cached(long key, CaveColumns columns) {
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    public List<CaveLayerEntry> getEntries() {
+        return this.entries;
+    }
+
+    public CaveLayerEntry getEntry(int layer) {
+        return this.entries.get(layer);
+    }
+
+    public CaveColumns getColumns(ChunkPos pos) {
+        return this.getColumns(pos.x, pos.z);
+    }
+
+    public CaveColumns getColumns(int chunkX, int chunkZ) {
+        long key = ChunkPos.toLong(chunkX, chunkZ);
+        int index = (int) HashCommon.mix(key) & (CACHE_SIZE - 1);
+        Cached cached = this.cache.get(index);
+        if (cached != null && cached.key() == key) return cached.columns();
+        // two threads racing on one chunk just build it twice
+        CaveColumns columns = CaveColumns.sample(new ChunkPos(chunkX, chunkZ), this.entries, this.horizontalScale);
+        this.cache.set(index, new Cached(key, columns));
+        return columns;
+    }
+
+    /**
+     * @return the layer the block is hollowed out by, or null if it isn't in a cave
+     */
+    @Nullable
+    public CaveLayerEntry getLayer(int x, int y, int z) {
+        int layer = this.getColumns(x >> 4, z >> 4).getLayer(x & 0xF, y, z & 0xF);
+        return layer < 0 ? null : this.entries.get(layer);
+    }
+}
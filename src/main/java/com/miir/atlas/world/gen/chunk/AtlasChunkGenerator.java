@@ -3,21 +3,34 @@ package com.miir.atlas.world.gen.chunk;
 import com.google.common.annotations.VisibleForTesting;
 import com.miir.atlas.Atlas;
 import com.miir.atlas.accessor.AMISurfaceBuilderAccessor;
+import com.miir.atlas.config.AtlasConfig;
+import com.miir.atlas.stats.AtlasStats;
+import com.miir.atlas.stats.jfr.BuildSurfaceEvent;
+import com.miir.atlas.stats.jfr.CarveEvent;
+import com.miir.atlas.stats.jfr.PopulateNoiseEvent;
+import com.miir.atlas.world.gen.AtlasExecutor;
 import com.miir.atlas.world.gen.AtlasMapInfo;
 import com.miir.atlas.world.gen.NamespacedMapImage;
+import com.miir.atlas.world.gen.biome.source.AtlasBiomeSource;
+import com.miir.atlas.world.gen.cave.CaveColumns;
+import com.miir.atlas.world.gen.cave.CaveLayerEntry;
+import com.miir.atlas.world.gen.cave.CaveLayers;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Util;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.random.CheckedRandom;
 import net.minecraft.util.math.random.ChunkRandom;
@@ -31,9 +44,12 @@ import net.minecraft.world.biome.GenerationSettings;
 import net.minecraft.world.biome.source.BiomeAccess;
 import net.minecraft.world.biome.source.BiomeCoords;
 import net.minecraft.world.biome.source.BiomeSource;
+import net.minecraft.world.biome.source.util.MultiNoiseUtil;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
 import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.UpgradeData;
 import net.minecraft.world.gen.GenerationStep;
 import net.minecraft.world.gen.HeightContext;
 import net.minecraft.world.gen.StructureAccessor;
@@ -41,15 +57,22 @@ import net.minecraft.world.gen.StructureWeightSampler;
 import net.minecraft.world.gen.carver.CarverContext;
 import net.minecraft.world.gen.carver.CarvingMask;
 import net.minecraft.world.gen.carver.ConfiguredCarver;
+import net.minecraft.world.gen.densityfunction.DensityFunctionTypes;
 import net.minecraft.world.gen.chunk.*;
 import net.minecraft.world.gen.noise.NoiseConfig;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 public class AtlasChunkGenerator extends ChunkGenerator {
@@ -64,15 +87,12 @@ public class AtlasChunkGenerator extends ChunkGenerator {
     private final float verticalScale;
     private final float horizontalScale;
     private final RegistryEntry<AtlasMapInfo> mapInfo;
-
-//    may revisit in the future, not a priority though
-//    private final ArrayList<CaveLayerEntry> caveLayers = new ArrayList<>();
-
+    private final CaveLayers caveLayers;
 
     public AtlasChunkGenerator(
             RegistryEntry<AtlasMapInfo> ami, String aquiferPath, String roofPath,
             BiomeSource biomeSource, RegistryEntry<ChunkGeneratorSettings> settings,
-            int ceilingHeight
+            int ceilingHeight, List<CaveLayerEntry> caveLayers
     ) {
         super(biomeSource);
         this.mapInfo = ami;
@@ -87,34 +107,28 @@ public class AtlasChunkGenerator extends ChunkGenerator {
         this.aquifer = !aquiferPath.isEmpty() ? Atlas.getOrCreateMap(aquiferPath, NamespacedMapImage.Type.GRAYSCALE) : null;
         this.roof = !roofPath.isEmpty() ? Atlas.getOrCreateMap(roofPath, NamespacedMapImage.Type.GRAYSCALE) : null;
         this.settings = settings;
+        this.caveLayers = new CaveLayers(caveLayers, this.horizontalScale);
     }
 
     public void findMaps(MinecraftServer server, String levelName) throws IOException {
-        this.heightmap.initialize(server);
+        this.heightmap.initialize(server, this.horizontalScale);
         Atlas.LOGGER.info("found elevation data for dimension " + levelName + " in a " + this.heightmap.getWidth() + "x" + this.heightmap.getHeight() + " map: " + getPath());
         if (!this.getAquiferPath().isEmpty()) {
-            this.aquifer.initialize(server);
+            this.aquifer.initialize(server, this.horizontalScale);
             Atlas.LOGGER.info("found aquifer data for dimension " + levelName + " in a " + this.aquifer.getWidth() + "x" + this.aquifer.getHeight() + " map: " + getAquiferPath());
         } else {
             Atlas.LOGGER.warn("couldn't find aquifer for dimension " + levelName + ", defaulting to sea level!");
         }
         if (!Objects.equals(this.getRoofPath(), "")) {
-            this.roof.initialize(server);
+            this.roof.initialize(server, this.horizontalScale);
             Atlas.LOGGER.info("found roof data for dimension " + levelName + " in a " + this.roof.getWidth() + "x" + this.roof.getHeight() + " map: " + getRoofPath());
         }
-//        if (this.caveLayers.size() > 0) {
-//            for (CaveLayerEntry layer :
-//                    this.caveLayers) {
-//                layer.getCeiling().initialize(server);
-//                layer.getFloor().initialize(server);
-//                if (layer.getBiomes() != null) {
-//                    layer.getBiomes().initialize(server);
-//                }
-//                if (layer.getAquifer() != null) {
-//                    layer.getAquifer().initialize(server);
-//                }
-//            }
-//        }
+        for (CaveLayerEntry layer : this.caveLayers.getEntries()) {
+            layer.initialize(server, levelName, this.horizontalScale);
+        }
+        if (this.getBiomeSource() instanceof AtlasBiomeSource biomeSource) {
+            biomeSource.setCaveLayers(this.caveLayers.isEmpty() ? null : this.caveLayers);
+        }
     }
 
     public static final MapCodec<AtlasChunkGenerator> CODEC = RecordCodecBuilder.mapCodec(
@@ -136,7 +150,10 @@ public class AtlasChunkGenerator extends ChunkGenerator {
                             .forGetter(AtlasChunkGenerator::getSettings),
                     Codec.INT
                             .optionalFieldOf("ceiling_height", Integer.MIN_VALUE)
-                            .forGetter(AtlasChunkGenerator::getCeilingHeight)
+                            .forGetter(AtlasChunkGenerator::getCeilingHeight),
+                    CaveLayerEntry.CODEC.listOf()
+                            .optionalFieldOf("cave_layers", List.of())
+                            .forGetter(AtlasChunkGenerator::getCaveLayers)
             ).apply(instance, instance.stable(AtlasChunkGenerator::new))
     );
 
@@ -144,6 +161,10 @@ public class AtlasChunkGenerator extends ChunkGenerator {
         return this.ceilingHeight;
     }
 
+    private List<CaveLayerEntry> getCaveLayers() {
+        return this.caveLayers.getEntries();
+    }
+
     private RegistryEntry<AtlasMapInfo> getMapInfo() {
         return this.mapInfo;
     }
@@ -168,10 +189,89 @@ public class AtlasChunkGenerator extends ChunkGenerator {
         return this.verticalScale * d + startingY;
     }
 
+    /**
+     * fills {@code out} with the map value of every column in the chunk, indexed by {@code (z & 0xF) << 4 | (x & 0xF)}.
+     * each entry is identical to {@code (int) getFromMap(x, z, nmi)}.
+     */
+    private void sampleChunk(ChunkPos pos, @NotNull NamespacedMapImage nmi, int[] out) {
+        nmi.sampleElevations(pos.getStartX(), pos.getStartZ(), 16, 16, 1, this.horizontalScale, this.verticalScale, this.startingY, this.getMinimumY() - 1, out, 0);
+    }
+
+    /**
+     * samples a grid of columns straight from the loaded maps, without generating anything: the surface elevation and
+     * water level that chunks are generated with, and the index of each column's surface biome in
+     * {@link AtlasBiomeSource#getBiomePalette()}. the grid is {@code sizeX x sizeZ} columns starting at
+     * {@code (startX, startZ)}, {@code stride} blocks apart, written row-major ({@code out[dz * sizeX + dx]}). columns
+     * outside the heightmap get an elevation below the world. arrays that are null are skipped.
+     * <p>
+     * safe to call from any thread, and meant for map renderers and other mods that need the terrain of a large area.
+     * each map is read from a single version of it, but a reload finishing between two maps can pair the old version of
+     * one with the new version of another.
+     * @throws IllegalStateException if biomes are asked for but the biome source isn't an {@link AtlasBiomeSource}
+     */
+    public void sampleTerrain(int startX, int startZ, int sizeX, int sizeZ, int stride, @Nullable int[] elevations, @Nullable int[] waterLevels, @Nullable int[] biomes) {
+        int maxElevation = this.startingY + this.getWorldHeight();
+        int size = sizeX * sizeZ;
+        if (elevations != null) {
+            this.heightmap.sampleElevations(startX, startZ, sizeX, sizeZ, stride, this.horizontalScale, this.verticalScale, this.startingY, this.getMinimumY() - 1, elevations, 0);
+            for (int c = 0; c < size; c++) {
+                elevations[c] = Math.min(elevations[c], maxElevation);
+            }
+        }
+        if (waterLevels != null) {
+            if (this.aquifer != null) {
+                this.aquifer.sampleElevations(startX, startZ, sizeX, sizeZ, stride, this.horizontalScale, this.verticalScale, this.startingY, this.getMinimumY() - 1, waterLevels, 0);
+                for (int c = 0; c < size; c++) {
+                    waterLevels[c] = Math.min(Math.max(waterLevels[c], this.seaLevel), maxElevation);
+                }
+            } else {
+                Arrays.fill(waterLevels, 0, size, this.seaLevel);
+            }
+        }
+        if (biomes != null) {
+            if (!(this.biomeSource instanceof AtlasBiomeSource atlasBiomeSource)) {
+                throw new IllegalStateException("can't sample biomes from a " + this.biomeSource.getClass().getSimpleName());
+            }
+            atlasBiomeSource.sampleBiomes(startX, startZ, sizeX, sizeZ, stride, biomes);
+        }
+    }
+
+    /**
+     * @return the chunks covered by the heightmap as {@code {minX, minZ, maxX, maxZ}}, all inclusive. everything
+     * outside of them is void
+     */
+    public int[] getMapChunkBounds() {
+        float halfWidth = this.heightmap.getWidth() / 2f * this.horizontalScale;
+        float halfHeight = this.heightmap.getHeight() / 2f * this.horizontalScale;
+        return new int[]{
+                MathHelper.floor(-halfWidth) >> 4,
+                MathHelper.floor(-halfHeight) >> 4,
+                (MathHelper.ceil(halfWidth) - 1) >> 4,
+                (MathHelper.ceil(halfHeight) - 1) >> 4
+        };
+    }
+
     public RegistryEntry<ChunkGeneratorSettings> getSettings() {
         return this.settings;
     }
 
+    /**
+     * @return every map terrain is generated from: the heightmap, aquifer, roof, cave layers and the biome map
+     */
+    public List<NamespacedMapImage> getMaps() {
+        List<NamespacedMapImage> maps = new ArrayList<>();
+        maps.add(this.heightmap);
+        if (this.aquifer != null) maps.add(this.aquifer);
+        if (this.roof != null) maps.add(this.roof);
+        for (CaveLayerEntry layer : this.caveLayers.getEntries()) {
+            maps.add(layer.getFloor());
+            maps.add(layer.getCeiling());
+            if (layer.getBiomes() != null) maps.add(layer.getBiomes());
+        }
+        if (this.getBiomeSource() instanceof AtlasBiomeSource biomeSource) maps.add(biomeSource.getBiomeMap());
+        return maps;
+    }
+
     private String getPath() {
         return this.heightmap.getPath();
     }
@@ -182,9 +282,20 @@ public class AtlasChunkGenerator extends ChunkGenerator {
     }
 
     @Override
-    @SuppressWarnings("deprecation")
     public void carve(ChunkRegion chunkRegion, long seed, NoiseConfig noiseConfig, BiomeAccess biomeAccess, StructureAccessor structureAccessor, Chunk chunk2, GenerationStep.Carver carverStep) {
+        long start = AtlasStats.CARVE.start();
+        CarveEvent event = new CarveEvent();
+        event.begin();
+        try {
+            this.carveChunk(chunkRegion, seed, noiseConfig, biomeAccess, structureAccessor, chunk2, carverStep);
+        } finally {
+            AtlasStats.CARVE.stop(start);
+            event.commit(chunk2);
+        }
+    }
 
+    @SuppressWarnings("deprecation")
+    private void carveChunk(ChunkRegion chunkRegion, long seed, NoiseConfig noiseConfig, BiomeAccess biomeAccess, StructureAccessor structureAccessor, Chunk chunk2, GenerationStep.Carver carverStep) {
         BiomeAccess biomeAccess2 = biomeAccess.withSource((biomeX, biomeY, biomeZ) -> this.biomeSource.getBiome(biomeX, biomeY, biomeZ, noiseConfig.getMultiNoiseSampler()));
         ChunkRandom chunkRandom = new ChunkRandom(new CheckedRandom(RandomSeed.getSeed()));
         int i = 8;
@@ -220,15 +331,23 @@ public class AtlasChunkGenerator extends ChunkGenerator {
         if (SharedConstants.isOutsideGenerationArea(chunk.getPos())) {
             return;
         }
-        HeightContext heightContext = new HeightContext(this, region);
-        this.buildSurface(chunk, heightContext, noiseConfig, structures, region.getBiomeAccess(), region.getRegistryManager().get(RegistryKeys.BIOME), Blender.getBlender(region));
+        long start = AtlasStats.BUILD_SURFACE.start();
+        BuildSurfaceEvent event = new BuildSurfaceEvent();
+        event.begin();
+        try {
+            HeightContext heightContext = new HeightContext(this, region);
+            this.buildSurface(chunk, heightContext, noiseConfig, structures, region.getBiomeAccess(), region.getRegistryManager().get(RegistryKeys.BIOME), Blender.getBlender(region));
+        } finally {
+            AtlasStats.BUILD_SURFACE.stop(start);
+            event.commit(chunk);
+        }
     }
 
     @VisibleForTesting
     public void buildSurface(Chunk chunk, HeightContext heightContext, NoiseConfig noiseConfig, StructureAccessor structureAccessor, BiomeAccess biomeAccess, Registry<Biome> biomeRegistry, Blender blender) {
         ChunkNoiseSampler chunkNoiseSampler = chunk.getOrCreateChunkNoiseSampler(chunk3 -> this.createChunkNoiseSampler(chunk3, structureAccessor, blender, noiseConfig));
         ChunkGeneratorSettings chunkGeneratorSettings = this.settings.value();
-        ((AMISurfaceBuilderAccessor) noiseConfig.getSurfaceBuilder()).buildSurface(noiseConfig, biomeAccess, biomeRegistry, chunkGeneratorSettings.usesLegacyRandom(), heightContext, chunk, chunkNoiseSampler, chunkGeneratorSettings.surfaceRule(), this.mapInfo);
+        ((AMISurfaceBuilderAccessor) noiseConfig.getSurfaceBuilder()).buildSurface(noiseConfig, biomeAccess, biomeRegistry, chunkGeneratorSettings.usesLegacyRandom(), heightContext, chunk, chunkNoiseSampler, chunkGeneratorSettings.surfaceRule(), this.mapInfo, this.caveLayers.isEmpty() ? null : this.caveLayers);
     }
 
     @Override
@@ -264,43 +383,183 @@ public class AtlasChunkGenerator extends ChunkGenerator {
         int cellHeight = MathHelper.floorDiv(generationShapeConfig.height(), generationShapeConfig.verticalCellBlockCount());
         if (truncatedX < -16 || truncatedZ < -16 || truncatedX > this.heightmap.getWidth() || truncatedZ > this.heightmap.getHeight())
             return CompletableFuture.completedFuture(chunk);
-        this.heightmap.loadPixelsInRange(truncatedX, truncatedZ, true, Atlas.GEN_RADIUS);
-        if (this.aquifer != null) this.aquifer.loadPixelsInRange(truncatedX, truncatedZ, true, Atlas.GEN_RADIUS);
-        return CompletableFuture.supplyAsync(Util.debugSupplier("wgen_fill_noise", () -> this.populateNoise(chunk, structureAccessor, blender, noiseConfig, minimumCellY, cellHeight)), Util.getMainWorkerExecutor());
+        return AtlasExecutor.get().supplyAsync("populate_noise", Util.debugSupplier("wgen_fill_noise", () -> this.populateNoise(chunk, structureAccessor, blender, noiseConfig, minimumCellY, cellHeight)));
     }
 
     private Chunk populateNoise(Chunk chunk, StructureAccessor accessor, Blender blender, NoiseConfig noiseConfig, int minimumCellY, int cellHeight) {
+        long start = AtlasStats.POPULATE_NOISE.start();
+        PopulateNoiseEvent event = new PopulateNoiseEvent();
+        event.begin();
+        try {
+            return this.fillNoise(chunk, accessor, blender, noiseConfig, minimumCellY, cellHeight);
+        } finally {
+            AtlasStats.POPULATE_NOISE.stop(start);
+            event.commit(chunk);
+        }
+    }
+
+    /**
+     * generates only the part of a chunk that is a pure function of the maps, the settings and the seed: biomes,
+     * noise and surface, without structures, carvers or features. used to leave that part out of saved chunks.
+     */
+    public ProtoChunk generateBaseTerrain(ServerWorld world, NoiseConfig noiseConfig, ChunkPos pos) {
+        Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        ProtoChunk chunk = new ProtoChunk(pos, UpgradeData.NO_UPGRADE_DATA, world, biomeRegistry, null);
+        MultiNoiseUtil.MultiNoiseSampler biomeSampler = noiseConfig.getMultiNoiseSampler();
+        chunk.populateBiomes(this.biomeSource, biomeSampler);
+        // no structures: the sampler is created here so neither noise nor surface ask for a structure accessor
+        chunk.getOrCreateChunkNoiseSampler(c -> this.createChunkNoiseSampler(c, null, Blender.getNoBlending(), noiseConfig));
+        GenerationShapeConfig shape = this.settings.value().generationShapeConfig().trimHeight(chunk.getHeightLimitView());
+        int minimumCellY = MathHelper.floorDiv(shape.minimumY(), shape.verticalCellBlockCount());
+        int cellHeight = MathHelper.floorDiv(shape.height(), shape.verticalCellBlockCount());
+        if (cellHeight > 0) {
+            this.fillNoise(chunk, null, Blender.getNoBlending(), noiseConfig, minimumCellY, cellHeight);
+        }
+        BiomeAccess biomeAccess = new BiomeAccess((x, y, z) -> this.biomeSource.getBiome(x, y, z, biomeSampler), BiomeAccess.hashSeed(world.getSeed()));
+        this.buildSurface(chunk, new HeightContext(this, world), noiseConfig, null, biomeAccess, biomeRegistry, Blender.getNoBlending());
+        return chunk;
+    }
+
+    private Chunk fillNoise(Chunk chunk, StructureAccessor accessor, Blender blender, NoiseConfig noiseConfig, int minimumCellY, int cellHeight) {
         ChunkNoiseSampler chunkNoiseSampler = chunk.getOrCreateChunkNoiseSampler(chunk1 -> this.createChunkNoiseSampler(chunk, accessor, blender, noiseConfig));
         Heightmap oceanHeightmap = chunk.getHeightmap(Heightmap.Type.OCEAN_FLOOR_WG);
         Heightmap surfaceHeightmap = chunk.getHeightmap(Heightmap.Type.WORLD_SURFACE_WG);
+        ChunkPos chunkPos = chunk.getPos();
+        int[] elevations = new int[256];
+        int[] seaLevels = new int[256];
+        this.sampleTerrain(chunkPos.getStartX(), chunkPos.getStartZ(), 16, 16, 1, elevations, seaLevels, null);
+        CaveColumns caves = this.caveLayers.getEntries().isEmpty() ? null : this.caveLayers.getColumns(chunkPos);
+        if (caves != null && caves.isEmpty()) caves = null;
+        NoiseColumns columns = new NoiseColumns(elevations, seaLevels, caves);
+        NoiseSink.Direct sink = new NoiseSink.Direct(chunk, surfaceHeightmap, oceanHeightmap);
+        int cellsX = 16 / chunkNoiseSampler.getHorizontalCellBlockCount();
+        int strips = AtlasConfig.parallelNoise ? Math.min(cellsX, AtlasConfig.parallelism + 1) : 1;
+        if (strips <= 1) {
+            this.fillCells(chunk, chunkNoiseSampler, noiseConfig, columns, 0, cellsX, minimumCellY, cellHeight, sink);
+        } else {
+            int l = chunkNoiseSampler.getVerticalCellBlockCount();
+            NoiseSink.Buffered buffer = new NoiseSink.Buffered(minimumCellY * l, cellHeight * l);
+            NoiseStrips noiseStrips = new NoiseStrips(chunk, accessor, blender, noiseConfig, columns, cellsX, strips, minimumCellY, cellHeight, buffer);
+            for (int helper = 1; helper < strips; helper++) {
+                AtlasExecutor.get().execute("populate_noise", () -> noiseStrips.fill(null));
+            }
+            noiseStrips.fill(chunkNoiseSampler);
+            noiseStrips.await();
+            buffer.flush(sink, chunkPos.getStartX(), chunkPos.getStartZ());
+        }
+        if (this.roof != null) {
+            this.fillRoof(chunk, surfaceHeightmap, oceanHeightmap);
+        }
+        return chunk;
+    }
+
+    /**
+     * the map data of one chunk's columns, indexed {@code z << 4 | x}
+     */
+    private record NoiseColumns(int[] elevations, int[] seaLevels, @Nullable CaveColumns caves) {
+    }
+
+    /**
+     * the strips of cell columns of one chunk's noise fill. the filling thread and helpers on the atlas executor claim
+     * strips in order, so the filling thread never waits on a strip that no thread has started yet, even when the
+     * executor is busy with other chunks.
+     */
+    private final class NoiseStrips {
+        private final Chunk chunk;
+        private final StructureAccessor accessor;
+        private final Blender blender;
+        private final NoiseConfig noiseConfig;
+        private final NoiseColumns columns;
+        private final int cellsX;
+        private final int strips;
+        private final int minimumCellY;
+        private final int cellHeight;
+        private final NoiseSink sink;
+        private final AtomicInteger next = new AtomicInteger();
+        private final Phaser done;
+        private volatile Throwable failure;
+
+        NoiseStrips(Chunk chunk, StructureAccessor accessor, Blender blender, NoiseConfig noiseConfig, NoiseColumns columns, int cellsX, int strips, int minimumCellY, int cellHeight, NoiseSink sink) {
+            this.chunk = chunk;
+            this.accessor = accessor;
+            this.blender = blender;
+            this.noiseConfig = noiseConfig;
+            this.columns = columns;
+            this.cellsX = cellsX;
+            this.strips = strips;
+            this.minimumCellY = minimumCellY;
+            this.cellHeight = cellHeight;
+            this.sink = sink;
+            // one party per strip and one for the filling thread
+            this.done = new Phaser(strips + 1);
+        }
+
+        /**
+         * fills strips until none are left
+         * @param sampler a sampler nothing else is using, or null to create one for the first strip claimed
+         */
+        void fill(@Nullable ChunkNoiseSampler sampler) {
+            int strip;
+            while ((strip = this.next.getAndIncrement()) < this.strips) {
+                try {
+                    if (sampler == null) {
+                        sampler = AtlasChunkGenerator.this.createChunkNoiseSampler(this.chunk, this.accessor, this.blender, this.noiseConfig);
+                    }
+                    int from = strip * this.cellsX / this.strips;
+                    int to = (strip + 1) * this.cellsX / this.strips;
+                    AtlasChunkGenerator.this.fillCells(this.chunk, sampler, this.noiseConfig, this.columns, from, to, this.minimumCellY, this.cellHeight, this.sink);
+                } catch (Throwable t) {
+                    this.failure = t;
+                } finally {
+                    this.done.arrive();
+                }
+            }
+        }
+
+        /**
+         * waits for the strips other threads are still filling, after {@link #fill} returned on this thread
+         */
+        void await() {
+            this.done.arriveAndAwaitAdvance();
+            Throwable failure = this.failure;
+            if (failure != null) {
+                throw new CompletionException("failed to fill the noise of chunk " + this.chunk.getPos(), failure);
+            }
+        }
+    }
+
+    /**
+     * fills the cell columns along x from {@code fromCellX} (inclusive) to {@code toCellX} (exclusive), with a sampler
+     * that nothing else is using
+     */
+    private void fillCells(Chunk chunk, ChunkNoiseSampler chunkNoiseSampler, NoiseConfig noiseConfig, NoiseColumns columns, int fromCellX, int toCellX, int minimumCellY, int cellHeight, NoiseSink sink) {
         ChunkPos chunkPos = chunk.getPos();
         int i = chunkPos.getStartX();
         int j = chunkPos.getStartZ();
         AquiferSampler aquiferSampler = chunkNoiseSampler.getAquiferSampler();
         chunkNoiseSampler.sampleStartDensity();
+        if (fromCellX > 0) {
+            // interpolation always starts at the first cell column, move it along to ours
+            chunkNoiseSampler.sampleEndDensity(fromCellX - 1);
+            chunkNoiseSampler.swapBuffers();
+        }
         BlockPos.Mutable mutable = new BlockPos.Mutable();
         int minY = settings.value().generationShapeConfig().minimumY();
         int k = chunkNoiseSampler.getHorizontalCellBlockCount();
         int l = chunkNoiseSampler.getVerticalCellBlockCount();
-        int m = 16 / k;
         int n = 16 / k;
         BlockState defaultBlock = this.settings.value().defaultBlock();
         BlockState defaultFluid = this.settings.value().defaultFluid();
-        for (int o = 0; o < m; ++o) {
+        int[] elevations = columns.elevations();
+        int[] seaLevels = columns.seaLevels();
+        CaveColumns caves = columns.caves();
+        for (int o = fromCellX; o < toCellX; ++o) {
             chunkNoiseSampler.sampleEndDensity(o);
             for (int p = 0; p < n; ++p) {
-                int q1 = chunk.countVerticalSections() - 1;
-                ChunkSection chunkSection = chunk.getSection(q1);
                 for (int q = cellHeight - 1; q >= 0; --q) {
                     chunkNoiseSampler.onSampledCellCorners(q, p);
                     for (int r = l - 1; r >= 0; --r) {
                         int s = (minimumCellY + q) * l + r;
-                        int t = s & 0xF;
-                        int u = chunk.getSectionIndex(s);
-                        if (q1 != u) {
-                            q1 = u;
-                            chunkSection = chunk.getSection(u);
-                        }
                         double d = (double) r / (double) l;
                         chunkNoiseSampler.interpolateY(s, d);
                         for (int v = 0; v < k; ++v) {
@@ -317,10 +576,13 @@ public class AtlasChunkGenerator extends ChunkGenerator {
                                 int blockY = chunkNoiseSampler.blockY();
                                 int blockZ = chunkNoiseSampler.blockZ();
                                 mutable.set(blockX, blockY, blockZ);
-                                int seaLevel = this.getSeaLevel(blockX, blockZ);
-                                int elevation = (int) Math.min(this.getFromMap(blockX, blockZ, this.heightmap), this.startingY + this.getWorldHeight());
+                                int seaLevel = seaLevels[aa << 4 | x];
+                                int elevation = elevations[aa << 4 | x];
                                 if (blockY >= seaLevel && blockY >= elevation || elevation < this.getMinimumY())
                                     continue;
+                                // mapped caves are left as air, the sea above them stays
+                                if (caves != null && blockY < elevation && caves.getLayer(x, blockY, aa) >= 0)
+                                    continue;
                                 int height = blockY - minY;
                                 int maxHeight = elevation - minY;
                                 double cave;
@@ -344,9 +606,7 @@ public class AtlasChunkGenerator extends ChunkGenerator {
                                     } else {
                                         state = AIR;
                                     }
-                                    chunk.setBlockState(mutable, state, false);
-                                    surfaceHeightmap.trackUpdate(blockX & 0xF, blockY, blockZ & 0xF, state);
-                                    oceanHeightmap.trackUpdate(blockX & 0xF, blockY, blockZ & 0xF, state);
+                                    sink.setBlockState(mutable, state);
                                 } else {
                                     state = chunkNoiseSampler.sampleBlockState();
                                     if (state == null) {
@@ -354,13 +614,11 @@ public class AtlasChunkGenerator extends ChunkGenerator {
                                     }
                                     if ((state == AIR || SharedConstants.isOutsideGenerationArea(chunk.getPos())))
                                         continue;
-                                    chunkSection.setBlockState(x, t, aa, state, false);
-                                    oceanHeightmap.trackUpdate(x, s, aa, state);
-                                    surfaceHeightmap.trackUpdate(x, s, aa, state);
+                                    sink.setSectionBlockState(x, s, aa, state);
                                 }
                                 if (!aquiferSampler.needsFluidTick() || state.getFluidState().isEmpty()) continue;
                                 mutable.set(w, s, z);
-                                chunk.markBlockForPostProcessing(mutable);
+                                sink.markForPostProcessing(mutable);
                             }
                         }
                     }
@@ -369,7 +627,64 @@ public class AtlasChunkGenerator extends ChunkGenerator {
             chunkNoiseSampler.swapBuffers();
         }
         chunkNoiseSampler.stopInterpolation();
-        return chunk;
+    }
+
+    /**
+     * fills every column from the roof map's elevation up to the ceiling with the default block, one span per column.
+     * sections that are roof in every column are swapped for a single-valued section instead of being filled block by
+     * block, so a thick roof costs about as much as a thin one.
+     */
+    private void fillRoof(Chunk chunk, Heightmap surfaceHeightmap, Heightmap oceanHeightmap) {
+        int top = this.getRoofTop(chunk);
+        int[] roofs = new int[256];
+        this.sampleChunk(chunk.getPos(), this.roof, roofs);
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        for (int c = 0; c < 256; c++) {
+            // like the heightmap, anything below the world is void: no roof in this column
+            roofs[c] = roofs[c] < this.getMinimumY() ? top : Math.max(roofs[c], chunk.getBottomY());
+            lowest = Math.min(lowest, roofs[c]);
+            highest = Math.max(highest, roofs[c]);
+        }
+        if (lowest >= top) return;
+        BlockState state = this.settings.value().defaultBlock();
+        ChunkSection[] sections = chunk.getSectionArray();
+        for (int i = chunk.getSectionIndex(lowest); i <= chunk.getSectionIndex(top - 1); i++) {
+            int y0 = ChunkSectionPos.getBlockCoord(chunk.sectionIndexToCoord(i));
+            int y1 = y0 + 16;
+            if (highest <= y0 && top >= y1) {
+                sections[i] = new ChunkSection(new PalettedContainer<>(Block.STATE_IDS, state, PalettedContainer.PaletteProvider.BLOCK_STATE), sections[i].getBiomeContainer());
+                continue;
+            }
+            ChunkSection section = sections[i];
+            int end = Math.min(top, y1);
+            for (int c = 0; c < 256; c++) {
+                for (int y = Math.max(roofs[c], y0); y < end; y++) {
+                    section.setBlockState(c & 0xF, y & 0xF, c >> 4, state, false);
+                }
+            }
+        }
+        for (int c = 0; c < 256; c++) {
+            if (roofs[c] >= top) continue;
+            surfaceHeightmap.trackUpdate(c & 0xF, top - 1, c >> 4, state);
+            oceanHeightmap.trackUpdate(c & 0xF, top - 1, c >> 4, state);
+        }
+    }
+
+    /**
+     * @return the y level just above the roof: {@code ceiling_height} if set, otherwise the top of the world
+     */
+    private int getRoofTop(HeightLimitView world) {
+        return this.ceilingHeight == Integer.MIN_VALUE ? world.getTopY() : Math.min(this.ceilingHeight, world.getTopY());
+    }
+
+    /**
+     * @return the lowest y level of the roof in this column, or {@code top} if there is none
+     */
+    private int getRoofBottom(int x, int z, int top) {
+        if (this.roof == null) return top;
+        int bottom = (int) this.getFromMap(x, z, this.roof);
+        return bottom < this.getMinimumY() ? top : bottom;
     }
 
     @Override
@@ -391,6 +706,8 @@ public class AtlasChunkGenerator extends ChunkGenerator {
 
     @Override
     public int getHeight(int x, int z, Heightmap.Type heightmap, HeightLimitView world, NoiseConfig noiseConfig) {
+        int top = this.getRoofTop(world);
+        if (this.getRoofBottom(x, z, top) < top) return top;
         return (int) (
 //                (heightmap == Heightmap.Type.OCEAN_FLOOR_WG || heightmap == Heightmap.Type.OCEAN_FLOOR)
 //                        ? this.getFromMap(x, z, this.heightmap) :
@@ -402,6 +719,19 @@ public class AtlasChunkGenerator extends ChunkGenerator {
 
     @Override
     public VerticalBlockSample getColumnSample(int x, int z, HeightLimitView world, NoiseConfig noiseConfig) {
+        VerticalBlockSample terrain = this.getTerrainColumnSample(x, z, world);
+        int top = this.getRoofTop(world);
+        int roofBottom = Math.max(this.getRoofBottom(x, z, top), world.getBottomY());
+        if (roofBottom >= top) return terrain;
+        BlockState[] states = new BlockState[top - world.getBottomY()];
+        for (int i = 0; i < states.length; i++) {
+            int y = world.getBottomY() + i;
+            states[i] = y >= roofBottom ? this.settings.value().defaultBlock() : terrain.getState(y);
+        }
+        return new VerticalBlockSample(world.getBottomY(), states);
+    }
+
+    private VerticalBlockSample getTerrainColumnSample(int x, int z, HeightLimitView world) {
         int elevation = (int) this.getFromMap(x, z, this.heightmap);
         int seaLevel = this.getSeaLevel(x, z);
         if (elevation < this.getMinimumY())
@@ -427,7 +757,9 @@ public class AtlasChunkGenerator extends ChunkGenerator {
     }
 
     private ChunkNoiseSampler createChunkNoiseSampler(Chunk chunk, StructureAccessor world, Blender blender, NoiseConfig noiseConfig) {
-        return ChunkNoiseSampler.create(chunk, noiseConfig, StructureWeightSampler.createStructureWeightSampler(world, chunk.getPos()), this.settings.value(), this.createFluidLevelSampler(this.settings.value()), blender);
+        // no structure accessor when only the base terrain is generated, see generateBaseTerrain
+        DensityFunctionTypes.Beardifying beardifier = world == null ? DensityFunctionTypes.Beardifier.INSTANCE : StructureWeightSampler.createStructureWeightSampler(world, chunk.getPos());
+        return ChunkNoiseSampler.create(chunk, noiseConfig, beardifier, this.settings.value(), this.createFluidLevelSampler(this.settings.value()), blender);
     }
 
     private AquiferSampler.FluidLevelSampler createFluidLevelSampler(ChunkGeneratorSettings settings) {
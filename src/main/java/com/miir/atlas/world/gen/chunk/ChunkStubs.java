@@ -0,0 +1,202 @@
+package com.miir.atlas.world.gen.chunk;
+
+import com.google.gson.JsonElement;
+import com.miir.atlas.Atlas;
+import com.miir.atlas.world.gen.NamespacedMapImage;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.ReadableContainer;
+import net.minecraft.world.gen.chunk.ChunkGenerator;
+import net.minecraft.world.gen.chunk.ChunkGeneratorSettings;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * leaves regenerable terrain out of saved chunks (the {@code stub_chunks} option). when a chunk in an atlas dimension
+ * is saved, every section whose blocks or biomes are still exactly what {@link AtlasChunkGenerator#generateBaseTerrain}
+ * produces has that data replaced by a marker; when it is loaded again, the terrain is regenerated and put back.
+ * the comparison is done on the serialized nbt, so a chunk always loads byte-for-byte the way it would have been saved.
+ * sections that players, features, structures or carvers touched are saved as usual.
+ * <p>
+ * a stubbed chunk records a hash of everything its terrain is generated from: the maps, the generator's settings and
+ * the seed. a stub whose hash no longer matches would expand into different terrain than was saved, so it is refused
+ * unless the server is started with {@code -Datlas.stubs.ignore_changes=true}.
+ */
+public final class ChunkStubs {
+    private static final String SECTIONS = "sections";
+    private static final String BLOCK_STATES = "block_states";
+    private static final String BIOMES = "biomes";
+    private static final String BASE_BLOCKS = "atlas:base_block_states";
+    private static final String BASE_BIOMES = "atlas:base_biomes";
+    private static final String BASE_HASH = "atlas:base_hash";
+    private static final boolean IGNORE_CHANGES = Boolean.getBoolean("atlas.stubs.ignore_changes");
+    // the settings and seed don't change while a world is loaded, unlike the maps
+    private static final Map<AtlasChunkGenerator, byte[]> SETTINGS_HASHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private ChunkStubs() {
+    }
+
+    /**
+     * replaces regenerable section data in {@code nbt}, in place.
+     * @return the number of sections that had blocks or biomes left out
+     */
+    public static int strip(ServerWorld world, AtlasChunkGenerator generator, NoiseConfig noiseConfig, NbtCompound nbt) {
+        NbtList sections = nbt.getList(SECTIONS, NbtElement.COMPOUND_TYPE);
+        if (sections.isEmpty()) return 0;
+        long hash = getTerrainHash(world, generator);
+        BaseTerrain base = new BaseTerrain(world, generator, noiseConfig, getPos(nbt));
+        // a map reloaded while the terrain was generated could have been read half old, half new
+        if (getTerrainHash(world, generator) != hash) return 0;
+        int stripped = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            NbtCompound section = sections.getCompound(i);
+            ChunkSection baseSection = base.getSection(section.getByte("Y"));
+            if (baseSection == null) continue;
+            boolean blocks = section.contains(BLOCK_STATES, NbtElement.COMPOUND_TYPE) && section.get(BLOCK_STATES).equals(base.encodeBlocks(baseSection));
+            boolean biomes = section.contains(BIOMES, NbtElement.COMPOUND_TYPE) && section.get(BIOMES).equals(base.encodeBiomes(baseSection));
+            if (blocks) {
+                section.remove(BLOCK_STATES);
+                section.putBoolean(BASE_BLOCKS, true);
+            }
+            if (biomes) {
+                section.remove(BIOMES);
+                section.putBoolean(BASE_BIOMES, true);
+            }
+            if (blocks || biomes) stripped++;
+        }
+        if (stripped > 0) nbt.putLong(BASE_HASH, hash);
+        return stripped;
+    }
+
+    /**
+     * puts regenerated terrain back into the sections {@link #strip} left it out of, in place. chunks without stubbed
+     * sections are left alone without generating anything.
+     */
+    public static NbtCompound expand(ServerWorld world, AtlasChunkGenerator generator, NoiseConfig noiseConfig, NbtCompound nbt) {
+        if (!isStub(nbt)) return nbt;
+        long hash = getTerrainHash(world, generator);
+        if (!nbt.contains(BASE_HASH, NbtElement.LONG_TYPE) || nbt.getLong(BASE_HASH) != hash) {
+            String message = "chunk " + getPos(nbt) + " was stubbed with other maps, settings or seed than " + world.getRegistryKey().getValue() + " has now, and would load with different terrain than it was saved with";
+            if (!IGNORE_CHANGES) {
+                // an Error, so the server stops instead of generating the chunk again and saving over it
+                throw new StubMismatchError(message + ". restore them, or start the server with -Datlas.stubs.ignore_changes=true to load it anyway");
+            }
+            Atlas.LOGGER.warn(message + ", loading it anyway");
+        }
+        nbt.remove(BASE_HASH);
+        NbtList sections = nbt.getList(SECTIONS, NbtElement.COMPOUND_TYPE);
+        BaseTerrain base = new BaseTerrain(world, generator, noiseConfig, getPos(nbt));
+        for (int i = 0; i < sections.size(); i++) {
+            NbtCompound section = sections.getCompound(i);
+            if (!section.getBoolean(BASE_BLOCKS) && !section.getBoolean(BASE_BIOMES)) continue;
+            ChunkSection baseSection = base.getSection(section.getByte("Y"));
+            if (baseSection == null) {
+                throw new IllegalStateException("stubbed section " + section.getByte("Y") + " of chunk " + getPos(nbt) + " is outside the world");
+            }
+            if (section.getBoolean(BASE_BLOCKS)) {
+                section.remove(BASE_BLOCKS);
+                section.put(BLOCK_STATES, base.encodeBlocks(baseSection));
+            }
+            if (section.getBoolean(BASE_BIOMES)) {
+                section.remove(BASE_BIOMES);
+                section.put(BIOMES, base.encodeBiomes(baseSection));
+            }
+        }
+        return nbt;
+    }
+
+    public static boolean isStub(NbtCompound nbt) {
+        NbtList sections = nbt.getList(SECTIONS, NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < sections.size(); i++) {
+            NbtCompound section = sections.getCompound(i);
+            if (section.getBoolean(BASE_BLOCKS) || section.getBoolean(BASE_BIOMES)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return a hash of the maps, settings and seed the generator's terrain is generated from
+     */
+    public static long getTerrainHash(ServerWorld world, AtlasChunkGenerator generator) {
+        MessageDigest digest = sha256();
+        digest.update(SETTINGS_HASHES.computeIfAbsent(generator, g -> {
+            MessageDigest settings = sha256();
+            DynamicOps<JsonElement> ops = world.getRegistryManager().getOps(JsonOps.INSTANCE);
+            settings.update(ChunkGenerator.CODEC.encodeStart(ops, g).getOrThrow().toString().getBytes(StandardCharsets.UTF_8));
+            settings.update(ChunkGeneratorSettings.CODEC.encodeStart(ops, g.getSettings().value()).getOrThrow().toString().getBytes(StandardCharsets.UTF_8));
+            settings.update(ByteBuffer.allocate(Long.BYTES).putLong(world.getSeed()).array());
+            return settings.digest();
+        }));
+        for (NamespacedMapImage map : generator.getMaps()) {
+            digest.update(map.getPath().getBytes(StandardCharsets.UTF_8));
+            byte[] content = map.getContentHash();
+            if (content != null) digest.update(content);
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class StubMismatchError extends Error {
+        StubMismatchError(String message) {
+            super(message);
+        }
+    }
+
+    private static ChunkPos getPos(NbtCompound nbt) {
+        return new ChunkPos(nbt.getInt("xPos"), nbt.getInt("zPos"));
+    }
+
+    /**
+     * the regenerated chunk, encoded with the same codecs {@link ChunkSerializer} uses
+     */
+    private static final class BaseTerrain {
+        private final ProtoChunk chunk;
+        private final Codec<ReadableContainer<RegistryEntry<Biome>>> biomeCodec;
+
+        BaseTerrain(ServerWorld world, AtlasChunkGenerator generator, NoiseConfig noiseConfig, ChunkPos pos) {
+            this.chunk = generator.generateBaseTerrain(world, noiseConfig, pos);
+            this.biomeCodec = ChunkSerializer.createCodec(world.getRegistryManager().get(RegistryKeys.BIOME));
+        }
+
+        ChunkSection getSection(int sectionY) {
+            int index = this.chunk.sectionCoordToIndex(sectionY);
+            if (index < 0 || index >= this.chunk.getSectionArray().length) return null;
+            return this.chunk.getSection(index);
+        }
+
+        NbtElement encodeBlocks(ChunkSection section) {
+            return ChunkSerializer.CODEC.encodeStart(NbtOps.INSTANCE, section.getBlockStateContainer()).getOrThrow();
+        }
+
+        NbtElement encodeBiomes(ChunkSection section) {
+            return this.biomeCodec.encodeStart(NbtOps.INSTANCE, section.getBiomeContainer()).getOrThrow();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.miir.atlas.world.gen.chunk;
+
+import com.miir.atlas.Atlas;
+import net.minecraft.registry.RegistryEntryLookup;
+import net.minecraft.util.math.noise.DoublePerlinNoiseSampler;
+import net.minecraft.world.gen.chunk.ChunkGeneratorSettings;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * the noise configs of atlas dimensions, shared between dimensions that use the same settings with the same seed.
+ * building a noise config wires up the whole density function graph, and a noise config is only ever read once it's
+ * built, so many dimensions on {@code atlas:default} only need one. settings are compared by identity: dimensions that
+ * reference the same settings file get the same instance, inline settings are never shared.
+ */
+public final class NoiseConfigs {
+    private static final Map<ChunkGeneratorSettings, Map<Long, NoiseConfig>> CONFIGS = new IdentityHashMap<>();
+
+    private NoiseConfigs() {
+    }
+
+    public static synchronized NoiseConfig getOrCreate(ChunkGeneratorSettings settings, RegistryEntryLookup<DoublePerlinNoiseSampler.NoiseParameters> noiseParameters, long seed) {
+        Map<Long, NoiseConfig> configs = CONFIGS.computeIfAbsent(settings, s -> new HashMap<>());
+        NoiseConfig config = configs.get(seed);
+        if (config == null) {
+            config = NoiseConfig.create(settings, noiseParameters, seed);
+            configs.put(seed, config);
+        } else {
+            Atlas.LOGGER.debug("reusing noise config for seed " + seed);
+        }
+        return config;
+    }
+
+    /**
+     * forgets every noise config, so they don't outlive the registries they were built from
+     */
+    public static synchronized void clear() {
+        CONFIGS.clear();
+    }
+}
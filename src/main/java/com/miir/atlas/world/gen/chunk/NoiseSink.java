@@ -0,0 +1,135 @@
+package com.miir.atlas.world.gen.chunk;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+
+/**
+ * where {@link AtlasChunkGenerator} puts the blocks it fills a chunk's noise with
+ */
+interface NoiseSink {
+    /**
+     * places a block through the chunk
+     */
+    void setBlockState(BlockPos.Mutable pos, BlockState state);
+
+    /**
+     * places a block straight into its section, in chunk-local x and z
+     */
+    void setSectionBlockState(int x, int y, int z, BlockState state);
+
+    void markForPostProcessing(BlockPos.Mutable pos);
+
+    /**
+     * writes to the chunk and its worldgen heightmaps as blocks come in
+     */
+    class Direct implements NoiseSink {
+        private final Chunk chunk;
+        private final Heightmap surfaceHeightmap;
+        private final Heightmap oceanHeightmap;
+        private int sectionIndex = -1;
+        private ChunkSection section;
+
+        Direct(Chunk chunk, Heightmap surfaceHeightmap, Heightmap oceanHeightmap) {
+            this.chunk = chunk;
+            this.surfaceHeightmap = surfaceHeightmap;
+            this.oceanHeightmap = oceanHeightmap;
+        }
+
+        @Override
+        public void setBlockState(BlockPos.Mutable pos, BlockState state) {
+            this.chunk.setBlockState(pos, state, false);
+            this.surfaceHeightmap.trackUpdate(pos.getX() & 0xF, pos.getY(), pos.getZ() & 0xF, state);
+            this.oceanHeightmap.trackUpdate(pos.getX() & 0xF, pos.getY(), pos.getZ() & 0xF, state);
+        }
+
+        @Override
+        public void setSectionBlockState(int x, int y, int z, BlockState state) {
+            int index = this.chunk.getSectionIndex(y);
+            if (index != this.sectionIndex) {
+                this.sectionIndex = index;
+                this.section = this.chunk.getSection(index);
+            }
+            this.section.setBlockState(x, y & 0xF, z, state, false);
+            this.oceanHeightmap.trackUpdate(x, y, z, state);
+            this.surfaceHeightmap.trackUpdate(x, y, z, state);
+        }
+
+        @Override
+        public void markForPostProcessing(BlockPos.Mutable pos) {
+            this.chunk.markBlockForPostProcessing(pos);
+        }
+    }
+
+    /**
+     * collects the blocks of a chunk whose cell columns are filled on several threads at once, each block by exactly one
+     * thread, and writes them to the chunk afterwards. neither sections nor heightmaps can be written from more than one
+     * thread.
+     */
+    class Buffered implements NoiseSink {
+        private static final byte SECTION = 1;
+        private static final byte CHUNK = 2;
+        private static final byte POST_PROCESS = 4;
+
+        private final int bottomY;
+        private final int height;
+        private final BlockState[] states;
+        private final byte[] flags;
+
+        Buffered(int bottomY, int height) {
+            this.bottomY = bottomY;
+            this.height = height;
+            this.states = new BlockState[height << 8];
+            this.flags = new byte[height << 8];
+        }
+
+        private int getIndex(int x, int y, int z) {
+            return (y - this.bottomY) << 8 | (z & 0xF) << 4 | x & 0xF;
+        }
+
+        @Override
+        public void setBlockState(BlockPos.Mutable pos, BlockState state) {
+            int index = this.getIndex(pos.getX(), pos.getY(), pos.getZ());
+            this.states[index] = state;
+            this.flags[index] = CHUNK;
+        }
+
+        @Override
+        public void setSectionBlockState(int x, int y, int z, BlockState state) {
+            int index = this.getIndex(x, y, z);
+            this.states[index] = state;
+            this.flags[index] = SECTION;
+        }
+
+        @Override
+        public void markForPostProcessing(BlockPos.Mutable pos) {
+            this.flags[this.getIndex(pos.getX(), pos.getY(), pos.getZ())] |= POST_PROCESS;
+        }
+
+        /**
+         * writes every collected block, each column from the top down like a serial fill does, so the heightmaps end up
+         * exactly the same
+         */
+        void flush(NoiseSink sink, int startX, int startZ) {
+            BlockPos.Mutable mutable = new BlockPos.Mutable();
+            for (int c = 0; c < 256; c++) {
+                int x = c & 0xF;
+                int z = c >> 4;
+                for (int y = this.bottomY + this.height - 1; y >= this.bottomY; y--) {
+                    int index = (y - this.bottomY) << 8 | c;
+                    byte flag = this.flags[index];
+                    if (flag == 0) continue;
+                    mutable.set(startX + x, y, startZ + z);
+                    if ((flag & CHUNK) != 0) {
+                        sink.setBlockState(mutable, this.states[index]);
+                    } else {
+                        sink.setSectionBlockState(x, y, z, this.states[index]);
+                    }
+                    if ((flag & POST_PROCESS) != 0) sink.markForPostProcessing(mutable);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.miir.atlas.world.gen.raster;
+
+/**
+ * compressed storage for grayscale maps. a tile of a single value is stored as that value; any other tile is stored as
+ * its minimum plus one unsigned byte or char per pixel for the difference, whichever fits the tile's range. an 8-bit
+ * heightmap takes at most a quarter of the memory of an {@link IntRaster}, and flat areas like oceans almost none.
+ */
+public class DeltaRaster extends TiledRaster {
+    private DeltaRaster(int width, int height, Tile[] tiles) {
+        super(width, height, tiles);
+    }
+
+    public static DeltaRaster of(MapRaster source) {
+        return new DeltaRaster(source.getWidth(), source.getHeight(), encode(source, DeltaRaster::encodeTile));
+    }
+
+    private static Tile encodeTile(int[] pixels, int width, int height) {
+        int n = width * height;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            min = Math.min(min, pixels[i]);
+            max = Math.max(max, pixels[i]);
+        }
+        if (min == max) return new ConstantTile(min);
+        long range = (long) max - min;
+        if (range <= 0xFF) {
+            byte[] deltas = new byte[n];
+            for (int i = 0; i < n; i++) {
+                deltas[i] = (byte) (pixels[i] - min);
+            }
+            return new ByteTile(min, width, deltas);
+        }
+        if (range <= 0xFFFF) {
+            char[] deltas = new char[n];
+            for (int i = 0; i < n; i++) {
+                deltas[i] = (char) (pixels[i] - min);
+            }
+            return new CharTile(min, width, deltas);
+        }
+        int[] values = new int[n];
+        System.arraycopy(pixels, 0, values, 0, n);
+        return new IntTile(width, values);
+    }
+
+    @Override
+    protected TiledRaster withTiles(Tile[] tiles) {
+        return new DeltaRaster(this.width, this.height, tiles);
+    }
+
+    private record ByteTile(int base, int width, byte[] deltas) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            return this.base + (this.deltas[z * this.width + x] & 0xFF);
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 24 + 16 + this.deltas.length;
+        }
+    }
+
+    private record CharTile(int base, int width, char[] deltas) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            return this.base + this.deltas[z * this.width + x];
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 24 + 16 + 2L * this.deltas.length;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.miir.atlas.world.gen.raster;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * a map that is stored at a lower resolution than its source, for dimensions whose {@code horizontal_scale} is below 1
+ * and so cover less than one block per pixel. every {@code factor x factor} block of source pixels becomes one pixel:
+ * the mean for grayscale maps, the most common color for color maps (averaging colors would make up biomes). it is
+ * still addressed in source pixels, so samplers don't need to know about it, but only holds about one pixel per block.
+ * <p>
+ * the cells are laid out symmetrically around the center of the map, which is what maps are centered on, so the
+ * downsampled map lines up with the source everywhere. the strip of less than one cell that is left over at the edges
+ * takes the value of the nearest cell.
+ */
+public class DownsampledRaster implements MapRaster {
+    private final int width;
+    private final int height;
+    private final int factor;
+    private final int offsetX;
+    private final int offsetZ;
+    private final MapRaster level;
+
+    private DownsampledRaster(int width, int height, int factor, int offsetX, int offsetZ, MapRaster level) {
+        this.width = width;
+        this.height = height;
+        this.factor = factor;
+        this.offsetX = offsetX;
+        this.offsetZ = offsetZ;
+        this.level = level;
+    }
+
+    /**
+     * @return the smallest whole number of source pixels per block, at least 1
+     */
+    public static int getFactor(float horizontalScale) {
+        if (!(horizontalScale > 0) || horizontalScale >= 1) return 1;
+        return Math.max(1, (int) Math.floor(1 / horizontalScale));
+    }
+
+    /**
+     * downsamples the raster, one row of cells per task on the common fork-join pool.
+     * @param color whether to keep the most common value of each cell instead of the mean
+     * @return the downsampled raster, or the source itself if it is too small to downsample
+     */
+    public static MapRaster of(MapRaster source, int factor, boolean color) {
+        int width = source.getWidth() & ~1;
+        int height = source.getHeight() & ~1;
+        int halfCellsX = width / 2 / factor;
+        int halfCellsZ = height / 2 / factor;
+        if (factor < 2 || halfCellsX == 0 || halfCellsZ == 0) return source;
+        int cellsX = 2 * halfCellsX;
+        int cellsZ = 2 * halfCellsZ;
+        int offsetX = width / 2 - halfCellsX * factor;
+        int offsetZ = height / 2 - halfCellsZ * factor;
+        MapRaster level;
+        if (color) {
+            int[][] cells = new int[cellsZ][cellsX];
+            IntStream.range(0, cellsZ).parallel().forEach(cz -> {
+                int[] values = new int[factor * factor];
+                CountTable counts = new CountTable(values.length);
+                for (int cx = 0; cx < cellsX; cx++) {
+                    int n = 0;
+                    for (int z = 0; z < factor; z++) {
+                        for (int x = 0; x < factor; x++) {
+                            values[n++] = source.get(offsetX + cx * factor + x, offsetZ + cz * factor + z);
+                        }
+                    }
+                    cells[cz][cx] = counts.mostCommon(values);
+                }
+            });
+            level = new IntRaster(cells);
+        } else {
+            float[] cells = new float[cellsX * cellsZ];
+            float area = factor * factor;
+            IntStream.range(0, cellsZ).parallel().forEach(cz -> {
+                for (int cx = 0; cx < cellsX; cx++) {
+                    double sum = 0;
+                    for (int z = 0; z < factor; z++) {
+                        for (int x = 0; x < factor; x++) {
+                            sum += source.getFloat(offsetX + cx * factor + x, offsetZ + cz * factor + z);
+                        }
+                    }
+                    cells[cz * cellsX + cx] = (float) (sum / area);
+                }
+            });
+            level = new FloatRaster(cellsX, cellsZ, cells);
+        }
+        return new DownsampledRaster(width, height, factor, offsetX, offsetZ, level);
+    }
+
+    /**
+     * counts the values of one cell in an open-addressing table, reused for every cell of a row
+     */
+    private static final class CountTable {
+        private final int[] keys;
+        private final int[] counts;
+        private final int mask;
+
+        CountTable(int values) {
+            int capacity = HashCommon.nextPowerOfTwo(2 * values);
+            this.keys = new int[capacity];
+            this.counts = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * @return the value that appears most often, the first of them on a tie
+         */
+        int mostCommon(int[] values) {
+            Arrays.fill(this.counts, 0);
+            for (int value : values) {
+                this.counts[this.slot(value)]++;
+            }
+            int best = values[0];
+            int bestCount = 0;
+            for (int value : values) {
+                int count = this.counts[this.slot(value)];
+                if (count > bestCount) {
+                    best = value;
+                    bestCount = count;
+                }
+            }
+            return best;
+        }
+
+        // the slot holding the value, claimed for it if the value isn't in the table yet
+        private int slot(int value) {
+            int i = HashCommon.mix(value) & this.mask;
+            while (this.counts[i] != 0 && this.keys[i] != value) {
+                i = (i + 1) & this.mask;
+            }
+            this.keys[i] = value;
+            return i;
+        }
+    }
+
+    private int cellX(int x) {
+        return Math.min(Math.max(Math.floorDiv(x - this.offsetX, this.factor), 0), this.level.getWidth() - 1);
+    }
+
+    private int cellZ(int z) {
+        return Math.min(Math.max(Math.floorDiv(z - this.offsetZ, this.factor), 0), this.level.getHeight() - 1);
+    }
+
+    public int getFactor() {
+        return this.factor;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int get(int x, int z) {
+        return this.level.get(this.cellX(x), this.cellZ(z));
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        return this.level.getFloat(this.cellX(x), this.cellZ(z));
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        return 40 + this.level.getMemoryFootprint();
+    }
+}
@@ -0,0 +1,41 @@
+package com.miir.atlas.world.gen.raster;
+
+/**
+ * one float per pixel, row-major. used for 32-bit raw heightfields.
+ */
+public class FloatRaster implements MapRaster {
+    private final int width;
+    private final int height;
+    private final float[] data;
+
+    public FloatRaster(int width, int height, float[] data) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int get(int x, int z) {
+        return (int) this.data[z * this.width + x];
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        return this.data[z * this.width + x];
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        return 16 + 4L * this.data.length;
+    }
+}
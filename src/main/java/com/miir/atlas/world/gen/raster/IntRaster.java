@@ -0,0 +1,74 @@
+package com.miir.atlas.world.gen.raster;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * one int per pixel, stored by row. used for png maps.
+ */
+public class IntRaster implements MapRaster {
+    private final int[][] rows;
+    private final int width;
+
+    public IntRaster(int[][] rows) {
+        this.rows = rows;
+        this.width = rows.length == 0 ? 0 : rows[0].length;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.rows.length;
+    }
+
+    @Override
+    public int get(int x, int z) {
+        return this.rows[z][x];
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        return this.rows[z][x];
+    }
+
+    /**
+     * direct access for the grid sampler's inner loop
+     */
+    public int[] getRow(int z) {
+        return this.rows[z];
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        return 16 + this.rows.length * (16 + 4L * this.width);
+    }
+
+    @Override
+    public boolean regionEquals(MapRaster other, int x0, int z0, int x1, int z1) {
+        if (!(other instanceof IntRaster ints)) return MapRaster.super.regionEquals(other, x0, z0, x1, z1);
+        for (int z = z0; z < z1; z++) {
+            if (!Arrays.equals(this.rows[z], x0, x1, ints.rows[z], x0, x1)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * copies only the rows touched by a changed region; every other row is shared with this raster
+     */
+    @Override
+    public MapRaster patch(MapRaster source, List<int[]> regions) {
+        if (!(source instanceof IntRaster ints)) return source;
+        int[][] next = this.rows.clone();
+        for (int[] region : regions) {
+            for (int z = region[1]; z < region[3]; z++) {
+                if (next[z] == this.rows[z]) next[z] = this.rows[z].clone();
+                System.arraycopy(ints.rows[z], region[0], next[z], region[0], region[2] - region[0]);
+            }
+        }
+        return new IntRaster(next);
+    }
+}
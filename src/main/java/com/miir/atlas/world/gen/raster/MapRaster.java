@@ -0,0 +1,44 @@
+package com.miir.atlas.world.gen.raster;
+
+import java.util.List;
+
+/**
+ * the decoded pixels of a map. a reload patches a copy of the loaded raster instead of changing it in place.
+ */
+public interface MapRaster {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return the pixel as an integer: a packed rgb color for color maps, the (truncated) value for grayscale maps
+     */
+    int get(int x, int z);
+
+    /**
+     * @return the pixel at full precision. for integer rasters this is the same value as {@link #get}
+     */
+    float getFloat(int x, int z);
+
+    /**
+     * @return approximate heap usage in bytes
+     */
+    long getMemoryFootprint();
+
+    default boolean regionEquals(MapRaster other, int x0, int z0, int x1, int z1) {
+        for (int z = z0; z < z1; z++) {
+            for (int x = x0; x < x1; x++) {
+                if (Float.floatToIntBits(this.getFloat(x, z)) != Float.floatToIntBits(other.getFloat(x, z))) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a raster with the given regions of this one replaced by the same regions of {@code source}, which has
+     * the same size. regions are {@code {x0, z0, x1, z1}} with exclusive upper bounds
+     */
+    default MapRaster patch(MapRaster source, List<int[]> regions) {
+        return source;
+    }
+}
@@ -0,0 +1,104 @@
+package com.miir.atlas.world.gen.raster;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * compressed storage for color maps. every tile gets its own palette of at most 256 colors; a tile of one color is
+ * stored as that color, and any other tile as runs of palette indices, with an index of where each row's runs start so
+ * a read only scans the runs of a single row. tiles too noisy for runs to pay off store one palette index per pixel,
+ * and tiles with more than 256 colors fall back to plain ints.
+ */
+public class PaletteRaster extends TiledRaster {
+    private static final int MAX_PALETTE = 256;
+
+    private PaletteRaster(int width, int height, Tile[] tiles) {
+        super(width, height, tiles);
+    }
+
+    public static PaletteRaster of(MapRaster source) {
+        return new PaletteRaster(source.getWidth(), source.getHeight(), encode(source, PaletteRaster::encodeTile));
+    }
+
+    private static Tile encodeTile(int[] pixels, int width, int height) {
+        int n = width * height;
+        Int2IntOpenHashMap indices = new Int2IntOpenHashMap();
+        indices.defaultReturnValue(-1);
+        IntArrayList palette = new IntArrayList();
+        byte[] indexed = new byte[n];
+        int runs = 0;
+        for (int i = 0; i < n; i++) {
+            int index = indices.get(pixels[i]);
+            if (index < 0) {
+                if (palette.size() == MAX_PALETTE) {
+                    int[] values = new int[n];
+                    System.arraycopy(pixels, 0, values, 0, n);
+                    return new IntTile(width, values);
+                }
+                index = palette.size();
+                indices.put(pixels[i], index);
+                palette.add(pixels[i]);
+            }
+            indexed[i] = (byte) index;
+            if (i % width == 0 || pixels[i] != pixels[i - 1]) runs++;
+        }
+        if (palette.size() == 1) return new ConstantTile(palette.getInt(0));
+        // a run costs two bytes against one byte per pixel for the plain indices
+        if (2 * runs >= n) return new IndexedTile(palette.toIntArray(), width, indexed);
+
+        char[] rowStarts = new char[height];
+        byte[] runEnds = new byte[runs];
+        byte[] runIndices = new byte[runs];
+        int run = -1;
+        for (int z = 0; z < height; z++) {
+            rowStarts[z] = (char) (run + 1);
+            for (int x = 0; x < width; x++) {
+                int i = z * width + x;
+                if (x == 0 || indexed[i] != indexed[i - 1]) {
+                    run++;
+                    runIndices[run] = indexed[i];
+                }
+                runEnds[run] = (byte) (x + 1);
+            }
+        }
+        return new RunLengthTile(palette.toIntArray(), rowStarts, runEnds, runIndices);
+    }
+
+    @Override
+    protected TiledRaster withTiles(Tile[] tiles) {
+        return new PaletteRaster(this.width, this.height, tiles);
+    }
+
+    private record IndexedTile(int[] palette, int width, byte[] indices) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            return this.palette[this.indices[z * this.width + x] & 0xFF];
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 24 + 16 + 4L * this.palette.length + 16 + this.indices.length;
+        }
+    }
+
+    /**
+     * @param rowStarts index of the first run of each row
+     * @param runEnds   exclusive end column of each run, so a run ending at the tile edge is stored as 64 (fits a byte
+     *                  as long as it's read unsigned)
+     */
+    private record RunLengthTile(int[] palette, char[] rowStarts, byte[] runEnds, byte[] runIndices) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            int run = this.rowStarts[z];
+            while ((this.runEnds[run] & 0xFF) <= x) {
+                run++;
+            }
+            return this.palette[this.runIndices[run] & 0xFF];
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 32 + 16 + 4L * this.palette.length + 16 + 2L * this.rowStarts.length + 2 * (16L + this.runEnds.length);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.mojang.serialization.MapCodec;
+import net.minecraft.resource.ResourceManager;
+
+import java.io.IOException;
+
+/**
+ * a pluggable backing for a map whose pixels aren't read up front: a procedural function, a directory of tiles outside
+ * the datapack, another storage format. a source only produces square tiles on request; a {@link SourcedRaster} pulls
+ * them as generation reaches them and keeps a bounded number in memory, so a map can be far larger than the heap.
+ * <p>
+ * a map is backed by a source when there's a {@code <path>.source.json} at its path, see {@link RasterSources}. other
+ * mods can add their own types of source with {@link RasterSources#register}.
+ */
+public interface RasterSource {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return the side length of the tiles the source is pulled in, in pixels. the tiles on the east and south edges
+     * may reach past the edge of the map
+     */
+    int getTileSize();
+
+    /**
+     * produces one tile, on any thread. a tile is requested again after it was evicted, and must have the same pixels
+     * every time.
+     * @return a raster of {@link #getTileSize()} pixels square
+     */
+    MapRaster loadTile(int column, int row) throws IOException;
+
+    /**
+     * what a source's json decodes to. it is turned into a source when a map that uses it is loaded
+     */
+    interface Factory {
+        MapCodec<? extends Factory> getCodec();
+
+        RasterSource create(Context context) throws IOException;
+    }
+
+    /**
+     * the map a source is created for
+     */
+    interface Context {
+        String getPath();
+
+        /**
+         * @return whether the map is a color map, whose pixels are packed rgb colors, instead of a grayscale one
+         */
+        boolean isColor();
+
+        ResourceManager getResourceManager();
+
+        /**
+         * decodes an image file into a raster the same way the map's own png would be
+         */
+        MapRaster decode(byte[] data) throws IOException;
+    }
+}
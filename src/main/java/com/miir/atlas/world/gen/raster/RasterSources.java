@@ -0,0 +1,194 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.miir.atlas.Atlas;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * the types of {@link RasterSource} that a {@code <path>.source.json} can use, and the format of that file:
+ * {@code {"source": {"type": "atlas:directory", ...}, "cache_tiles": 1024}}, where {@code cache_tiles} is the number of
+ * tiles kept in memory at most. built in are
+ * <ul>
+ *     <li>{@code atlas:directory}: png tiles in a directory of the server, outside of any datapack. {@code directory}
+ *     is relative to the server's folder, the rest works like a {@link TileGrid}: {@code tile_size}, {@code rows},
+ *     {@code columns} and a file name {@code pattern} with {@code {row}} and {@code {column}}. missing tiles are black</li>
+ *     <li>{@code atlas:constant}: a {@code width x height} map with the same {@code value} everywhere</li>
+ * </ul>
+ */
+public final class RasterSources {
+    private static final BiMap<Identifier, MapCodec<? extends RasterSource.Factory>> TYPES = HashBiMap.create();
+
+    public static final Codec<RasterSource.Factory> CODEC = Identifier.CODEC.<MapCodec<? extends RasterSource.Factory>>flatXmap(
+            id -> {
+                MapCodec<? extends RasterSource.Factory> codec = getType(id);
+                return codec == null ? DataResult.error(() -> "unknown raster source type " + id) : DataResult.success(codec);
+            },
+            codec -> {
+                Identifier id = getId(codec);
+                return id == null ? DataResult.error(() -> "unregistered raster source type " + codec) : DataResult.success(id);
+            }
+    ).dispatch("type", RasterSource.Factory::getCodec, codec -> codec);
+
+    public static final Codec<Manifest> MANIFEST_CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            CODEC.fieldOf("source").forGetter(Manifest::source),
+            Codec.intRange(1, 1 << 20).optionalFieldOf("cache_tiles", 1024).forGetter(Manifest::cacheTiles)
+    ).apply(instance, Manifest::new));
+
+    static {
+        register(Atlas.id("directory"), DirectorySource.CODEC);
+        register(Atlas.id("constant"), ConstantSource.CODEC);
+    }
+
+    private RasterSources() {
+    }
+
+    public record Manifest(RasterSource.Factory source, int cacheTiles) {
+    }
+
+    public static synchronized void register(Identifier id, MapCodec<? extends RasterSource.Factory> codec) {
+        if (TYPES.containsKey(id)) {
+            throw new IllegalArgumentException("raster source type " + id + " is already registered!");
+        }
+        TYPES.put(id, codec);
+    }
+
+    private static synchronized MapCodec<? extends RasterSource.Factory> getType(Identifier id) {
+        return TYPES.get(id);
+    }
+
+    private static synchronized Identifier getId(MapCodec<? extends RasterSource.Factory> codec) {
+        return TYPES.inverse().get(codec);
+    }
+
+    private record DirectorySource(String directory, TileGrid grid) implements RasterSource.Factory {
+        static final MapCodec<DirectorySource> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+                Codec.STRING.fieldOf("directory").forGetter(DirectorySource::directory),
+                TileGrid.MAP_CODEC.forGetter(DirectorySource::grid)
+        ).apply(instance, DirectorySource::new));
+
+        @Override
+        public MapCodec<DirectorySource> getCodec() {
+            return CODEC;
+        }
+
+        @Override
+        public RasterSource create(RasterSource.Context context) throws IOException {
+            Path root = FabricLoader.getInstance().getGameDir().toAbsolutePath().normalize();
+            Path directory = root.resolve(this.directory).normalize();
+            // datapacks can only point at the server's own folder
+            if (!directory.startsWith(root)) {
+                throw new IOException("directory " + this.directory + " of map " + context.getPath() + " is outside of the server folder!");
+            }
+            if (!Files.isDirectory(directory)) {
+                throw new IOException("could not find directory " + directory + " for map " + context.getPath() + "!");
+            }
+            return new RasterSource() {
+                @Override
+                public int getWidth() {
+                    return grid.getWidth();
+                }
+
+                @Override
+                public int getHeight() {
+                    return grid.getHeight();
+                }
+
+                @Override
+                public int getTileSize() {
+                    return grid.tileSize();
+                }
+
+                @Override
+                public MapRaster loadTile(int column, int row) throws IOException {
+                    Path file = directory.resolve(grid.getTilePath(row, column)).normalize();
+                    if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+                        Atlas.LOGGER.warn("map " + context.getPath() + " has no tile at " + file + ", leaving it empty");
+                        return TileGridRaster.empty(grid.tileSize());
+                    }
+                    MapRaster tile = context.decode(Files.readAllBytes(file));
+                    if (tile.getWidth() != grid.tileSize() || tile.getHeight() != grid.tileSize()) {
+                        throw new IOException("tile " + file + " is " + tile.getWidth() + "x" + tile.getHeight() + ", expected " + grid.tileSize() + "x" + grid.tileSize());
+                    }
+                    return tile;
+                }
+            };
+        }
+    }
+
+    private record ConstantSource(int width, int height, int value) implements RasterSource.Factory {
+        static final MapCodec<ConstantSource> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+                Codec.intRange(2, Integer.MAX_VALUE).fieldOf("width").forGetter(ConstantSource::width),
+                Codec.intRange(2, Integer.MAX_VALUE).fieldOf("height").forGetter(ConstantSource::height),
+                Codec.INT.fieldOf("value").forGetter(ConstantSource::value)
+        ).apply(instance, ConstantSource::new));
+
+        @Override
+        public MapCodec<ConstantSource> getCodec() {
+            return CODEC;
+        }
+
+        @Override
+        public RasterSource create(RasterSource.Context context) {
+            MapRaster tile = new ConstantTile(this.value);
+            return new RasterSource() {
+                @Override
+                public int getWidth() {
+                    return width;
+                }
+
+                @Override
+                public int getHeight() {
+                    return height;
+                }
+
+                @Override
+                public int getTileSize() {
+                    // one tile covers the whole map
+                    return Math.max(width, height);
+                }
+
+                @Override
+                public MapRaster loadTile(int column, int row) {
+                    return tile;
+                }
+            };
+        }
+    }
+
+    private record ConstantTile(int value) implements MapRaster {
+        @Override
+        public int getWidth() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int getHeight() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int get(int x, int z) {
+            return this.value;
+        }
+
+        @Override
+        public float getFloat(int x, int z) {
+            return this.value;
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 16;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * the json sidecar describing a headerless raw heightfield, as exported by terrain tools: {@code width} and
+ * {@code height} in pixels, {@code endianness} ({@code little} or {@code big}), and the range {@code [min, max]} that
+ * the samples are mapped onto. 16-bit samples are divided by 65535 first; 32-bit float samples are expected to be
+ * normalized to 0-1 already (use a range of 0-1 to keep absolute float heights as they are). the default range of 0-255
+ * matches an 8-bit png, so {@code vertical_scale} keeps its meaning.
+ */
+public record RawHeightfield(int width, int height, String endianness, float min, float max) {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static final Codec<RawHeightfield> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.INT.fieldOf("width").forGetter(RawHeightfield::width),
+            Codec.INT.fieldOf("height").forGetter(RawHeightfield::height),
+            Codec.STRING.optionalFieldOf("endianness", "little").forGetter(RawHeightfield::endianness),
+            Codec.FLOAT.optionalFieldOf("min", 0f).forGetter(RawHeightfield::min),
+            Codec.FLOAT.optionalFieldOf("max", 255f).forGetter(RawHeightfield::max)
+    ).apply(instance, RawHeightfield::new));
+
+    public enum Format {
+        R16(".r16", 2),
+        R32(".r32", 4);
+
+        private final String extension;
+        private final int bytesPerSample;
+
+        Format(String extension, int bytesPerSample) {
+            this.extension = extension;
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        public String getExtension() {
+            return this.extension;
+        }
+
+        public int getBytesPerSample() {
+            return this.bytesPerSample;
+        }
+    }
+
+    public ByteOrder byteOrder() {
+        return "big".equalsIgnoreCase(this.endianness) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * reads the samples straight from the channel into a primitive array with bulk buffer copies.
+     * @param digest updated with every byte read, so the caller can tell whether the file changed
+     */
+    public MapRaster read(ReadableByteChannel channel, Format format, MessageDigest digest) throws IOException {
+        int samples = Math.multiplyExact(this.width, this.height);
+        char[] shorts = format == Format.R16 ? new char[samples] : null;
+        float[] floats = format == Format.R32 ? new float[samples] : null;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(this.byteOrder());
+        int read = 0;
+        while (read < samples) {
+            int n = channel.read(buffer);
+            if (n < 0) break;
+            if (buffer.position() < format.bytesPerSample) continue;
+            buffer.flip();
+            int count = Math.min(buffer.remaining() / format.bytesPerSample, samples - read);
+            int bytes = count * format.bytesPerSample;
+            digest.update(buffer.duplicate().limit(bytes));
+            if (shorts != null) {
+                buffer.asCharBuffer().get(shorts, read, count);
+            } else {
+                buffer.asFloatBuffer().get(floats, read, count);
+            }
+            buffer.position(bytes);
+            buffer.compact();
+            read += count;
+        }
+        if (read < samples) {
+            throw new IOException("raw heightfield is too short: expected " + this.width + "x" + this.height + " samples, found " + read);
+        }
+        if (shorts != null) {
+            return new ShortRaster(this.width, this.height, shorts, this.min, this.max);
+        }
+        if (this.min != 0 || this.max != 1) {
+            float scale = this.max - this.min;
+            for (int i = 0; i < floats.length; i++) {
+                floats[i] = this.min + floats[i] * scale;
+            }
+        }
+        return new FloatRaster(this.width, this.height, floats);
+    }
+}
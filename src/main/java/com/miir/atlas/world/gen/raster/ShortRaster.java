@@ -0,0 +1,46 @@
+package com.miir.atlas.world.gen.raster;
+
+/**
+ * one unsigned 16-bit value per pixel, row-major, mapped linearly onto {@code [min, max]} when read. used for 16-bit
+ * raw heightfields at half the memory of a float raster.
+ */
+public class ShortRaster implements MapRaster {
+    private final int width;
+    private final int height;
+    private final char[] data;
+    private final float min;
+    private final float scale;
+
+    public ShortRaster(int width, int height, char[] data, float min, float max) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+        this.min = min;
+        this.scale = (max - min) / 65535f;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int get(int x, int z) {
+        return (int) this.getFloat(x, z);
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        return this.min + this.data[z * this.width + x] * this.scale;
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        return 16 + 2L * this.data.length;
+    }
+}
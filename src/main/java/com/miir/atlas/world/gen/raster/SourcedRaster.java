@@ -0,0 +1,167 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.miir.atlas.stats.jfr.MapCacheMissEvent;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a map pulled tile by tile from a {@link RasterSource}, through a fixed-size cache. the cache is {@value #WAYS}-way
+ * set associative with clock eviction within a set: a tile can be kept in any of the {@value #WAYS} slots of its set,
+ * and a tile read since the set's clock hand last passed it is skipped over once. the lowest bits of the set are the
+ * parities of the tile's column and row, so the four tiles around any point are always in four different sets and
+ * interpolating across a tile corner never evicts one of the tiles it reads. looking a tile up takes no lock; only
+ * putting a loaded tile in its set does. a tile that isn't cached is loaded by the first thread to ask for it; other
+ * threads asking at the same time wait for that one instead of loading it again.
+ * <p>
+ * pixels are addressed in map coordinates, so interpolation across a tile border reads from both tiles like it would
+ * from one image.
+ */
+public class SourcedRaster implements MapRaster {
+    private static final int WAYS = 4;
+
+    private final RasterSource source;
+    private final String name;
+    private final int tileSize;
+    // of the set index above the two parity bits
+    private final int mask;
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicIntegerArray referenced;
+    private final int[] hands;
+    private final Map<Long, CompletableFuture<MapRaster>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheTiles how many tiles are kept in memory at most, rounded up to a power of two of at least
+     *                   {@code 4 * WAYS}
+     */
+    public SourcedRaster(RasterSource source, String name, int cacheTiles) {
+        this.source = source;
+        this.name = name;
+        this.tileSize = source.getTileSize();
+        int capacity = HashCommon.nextPowerOfTwo(Math.max(4 * WAYS, cacheTiles));
+        int sets = capacity / WAYS;
+        this.mask = sets / 4 - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.referenced = new AtomicIntegerArray(capacity);
+        this.hands = new int[sets];
+    }
+
+    private record Slot(long key, MapRaster tile) {
+    }
+
+    @Override
+    public int getWidth() {
+        return this.source.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.source.getHeight();
+    }
+
+    @Override
+    public int get(int x, int z) {
+        int column = x / this.tileSize;
+        int row = z / this.tileSize;
+        return this.getTile(column, row).get(x - column * this.tileSize, z - row * this.tileSize);
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        int column = x / this.tileSize;
+        int row = z / this.tileSize;
+        return this.getTile(column, row).getFloat(x - column * this.tileSize, z - row * this.tileSize);
+    }
+
+    private MapRaster getTile(int column, int row) {
+        long key = (long) column << 32 | row & 0xFFFFFFFFL;
+        long pair = (long) (column >> 1) << 32 | (row >> 1) & 0xFFFFFFFFL;
+        int set = ((int) HashCommon.mix(pair) & this.mask) << 2 | (row & 1) << 1 | column & 1;
+        int first = set * WAYS;
+        for (int i = first; i < first + WAYS; i++) {
+            Slot slot = this.slots.get(i);
+            if (slot != null && slot.key() == key) {
+                if (this.referenced.get(i) == 0) this.referenced.lazySet(i, 1);
+                return slot.tile();
+            }
+        }
+        return this.load(key, column, row, set);
+    }
+
+    /**
+     * puts a tile in a free slot of its set, or the first one the clock hand finds that wasn't read since it last
+     * passed it
+     */
+    private synchronized void insert(int set, long key, MapRaster tile) {
+        int first = set * WAYS;
+        for (int i = first; i < first + WAYS; i++) {
+            Slot slot = this.slots.get(i);
+            // loaded again by a thread that missed it just before it was put here
+            if (slot != null && slot.key() == key) return;
+        }
+        int hand = this.hands[set];
+        for (int n = 0; ; n++) {
+            int i = first + hand;
+            hand = (hand + 1) % WAYS;
+            Slot slot = this.slots.get(i);
+            // after two rounds, readers can't keep every slot referenced any longer
+            if (slot == null || n >= 2 * WAYS || this.referenced.getAndSet(i, 0) == 0) {
+                this.slots.set(i, new Slot(key, tile));
+                this.referenced.set(i, 1);
+                this.hands[set] = hand;
+                return;
+            }
+        }
+    }
+
+    private MapRaster load(long key, int column, int row, int set) {
+        CompletableFuture<MapRaster> tile = new CompletableFuture<>();
+        CompletableFuture<MapRaster> claimed = this.loading.putIfAbsent(key, tile);
+        if (claimed != null) return claimed.join();
+        try {
+            MapCacheMissEvent.emit(this.name, "source_tile", column * this.tileSize, row * this.tileSize);
+            MapRaster raster = this.source.loadTile(column, row);
+            // cached before it stops being in flight, so nobody in between loads it again
+            this.insert(set, key, raster);
+            tile.complete(raster);
+            return raster;
+        } catch (Throwable t) {
+            IOException e = new IOException("could not load tile " + column + ", " + row + " of map " + this.name, t);
+            tile.completeExceptionally(e);
+            throw new CompletionException(e);
+        } finally {
+            this.loading.remove(key);
+        }
+    }
+
+    public RasterSource getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return the number of tiles currently cached
+     */
+    public int getLoadedTiles() {
+        int loaded = 0;
+        for (int i = 0; i < this.slots.length(); i++) {
+            if (this.slots.get(i) != null) loaded++;
+        }
+        return loaded;
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        long bytes = 48 + 12L * this.slots.length();
+        for (int i = 0; i < this.slots.length(); i++) {
+            Slot slot = this.slots.get(i);
+            if (slot != null) bytes += 24 + slot.tile().getMemoryFootprint();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+/**
+ * the json manifest of a map that is split into a grid of png tiles: {@code tile_size} in pixels (even, since maps are
+ * cropped to even sizes), the number of {@code rows} and {@code columns}, and a {@code pattern} for the tiles' resource
+ * paths, in which {@code {row}} and {@code {column}} are replaced by the tile's zero-based position. row 0 is the top
+ * (north) edge of the map, column 0 the left (west) edge.
+ */
+public record TileGrid(int tileSize, int rows, int columns, String pattern) {
+    public static final MapCodec<TileGrid> MAP_CODEC = RecordCodecBuilder.<TileGrid>mapCodec(instance -> instance.group(
+            Codec.INT.fieldOf("tile_size").forGetter(TileGrid::tileSize),
+            Codec.INT.fieldOf("rows").forGetter(TileGrid::rows),
+            Codec.INT.fieldOf("columns").forGetter(TileGrid::columns),
+            Codec.STRING.fieldOf("pattern").forGetter(TileGrid::pattern)
+    ).apply(instance, TileGrid::new)).validate(TileGrid::validate);
+    public static final Codec<TileGrid> CODEC = MAP_CODEC.codec();
+
+    private static DataResult<TileGrid> validate(TileGrid grid) {
+        if (grid.tileSize <= 0 || grid.tileSize % 2 != 0) {
+            return DataResult.error(() -> "tile_size must be a positive even number, found " + grid.tileSize);
+        }
+        if (grid.rows <= 0 || grid.columns <= 0) {
+            return DataResult.error(() -> "a tile grid needs at least one row and column, found " + grid.rows + "x" + grid.columns);
+        }
+        if ((long) grid.tileSize * grid.columns > Integer.MAX_VALUE || (long) grid.tileSize * grid.rows > Integer.MAX_VALUE) {
+            return DataResult.error(() -> "tile grid is too large: " + grid.columns + "x" + grid.rows + " tiles of " + grid.tileSize + " pixels");
+        }
+        return DataResult.success(grid);
+    }
+
+    public int getWidth() {
+        return this.tileSize * this.columns;
+    }
+
+    public int getHeight() {
+        return this.tileSize * this.rows;
+    }
+
+    public String getTilePath(int row, int column) {
+        return this.pattern.replace("{row}", Integer.toString(row)).replace("{column}", Integer.toString(column));
+    }
+}
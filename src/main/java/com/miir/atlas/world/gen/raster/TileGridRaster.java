@@ -0,0 +1,201 @@
+package com.miir.atlas.world.gen.raster;
+
+import com.miir.atlas.stats.jfr.MapCacheMissEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a map made of a {@link TileGrid} of separately stored images. a tile is only read and decoded the first time one of
+ * its pixels is, and its neighbours are decoded in the background at the same time, since generation tends to move
+ * across tile borders. pixels are addressed in map coordinates, so interpolation across a tile border reads from both
+ * tiles like it would from one image.
+ */
+public class TileGridRaster implements MapRaster {
+    private final TileGrid grid;
+    private final String name;
+    private final TileLoader loader;
+    private final Executor executor;
+    private final AtomicReferenceArray<CompletableFuture<Tile>> tiles;
+
+    public TileGridRaster(TileGrid grid, String name, TileLoader loader, Executor executor) {
+        this(grid, name, loader, executor, new AtomicReferenceArray<>(grid.rows() * grid.columns()));
+    }
+
+    private TileGridRaster(TileGrid grid, String name, TileLoader loader, Executor executor, AtomicReferenceArray<CompletableFuture<Tile>> tiles) {
+        this.grid = grid;
+        this.name = name;
+        this.loader = loader;
+        this.executor = executor;
+        this.tiles = tiles;
+    }
+
+    /**
+     * a decoded tile, with a hash of its source to tell whether it changed on reload. missing tiles have no hash
+     */
+    public record Tile(MapRaster raster, @Nullable byte[] hash) {
+    }
+
+    public interface TileLoader {
+        /**
+         * reads and decodes a tile. a tile without an image is all zeroes
+         */
+        Tile load(int row, int column) throws IOException;
+
+        /**
+         * @return a hash of the tile's source, the same one {@link #load} would put in its tile, without decoding it
+         */
+        @Nullable byte[] hash(int row, int column) throws IOException;
+    }
+
+    public static MapRaster empty(int size) {
+        return new EmptyTile(size);
+    }
+
+    private record EmptyTile(int size) implements MapRaster {
+        @Override
+        public int getWidth() {
+            return this.size;
+        }
+
+        @Override
+        public int getHeight() {
+            return this.size;
+        }
+
+        @Override
+        public int get(int x, int z) {
+            return 0;
+        }
+
+        @Override
+        public float getFloat(int x, int z) {
+            return 0;
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 16;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return this.grid.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.grid.getHeight();
+    }
+
+    @Override
+    public int get(int x, int z) {
+        int size = this.grid.tileSize();
+        int column = x / size;
+        int row = z / size;
+        return this.getTile(row, column).get(x - column * size, z - row * size);
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        int size = this.grid.tileSize();
+        int column = x / size;
+        int row = z / size;
+        return this.getTile(row, column).getFloat(x - column * size, z - row * size);
+    }
+
+    private MapRaster getTile(int row, int column) {
+        CompletableFuture<Tile> tile = this.tiles.get(row * this.grid.columns() + column);
+        if (tile == null) {
+            tile = this.load(row, column, true);
+        }
+        return tile.join().raster();
+    }
+
+    /**
+     * decodes a tile unless another thread already is; the first thread to claim a tile decodes it, any others wait
+     * for that one instead of decoding it again. a tile that fails to load is released again, so the next read retries
+     * it instead of failing forever.
+     */
+    private CompletableFuture<Tile> load(int row, int column, boolean prefetch) {
+        int index = row * this.grid.columns() + column;
+        CompletableFuture<Tile> tile = new CompletableFuture<>();
+        if (!this.tiles.compareAndSet(index, null, tile)) {
+            return this.tiles.get(index);
+        }
+        if (prefetch) {
+            // read on demand rather than ahead of time, so a sample is waiting on it
+            MapCacheMissEvent.emit(this.name, "grid_tile", column * this.grid.tileSize(), row * this.grid.tileSize());
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int r = row + dz;
+                    int c = column + dx;
+                    if (r < 0 || c < 0 || r >= this.grid.rows() || c >= this.grid.columns()) continue;
+                    if (this.tiles.get(r * this.grid.columns() + c) != null) continue;
+                    this.executor.execute(() -> this.load(r, c, false));
+                }
+            }
+        }
+        try {
+            tile.complete(this.loader.load(row, column));
+        } catch (Throwable t) {
+            // released before failing, so threads retrying after this failure don't get it again
+            this.tiles.compareAndSet(index, tile, null);
+            tile.completeExceptionally(new IOException("could not load tile " + this.grid.getTilePath(row, column), t));
+        }
+        return tile;
+    }
+
+    /**
+     * @return the number of tiles decoded so far
+     */
+    public int getLoadedTiles() {
+        int loaded = 0;
+        for (int i = 0; i < this.tiles.length(); i++) {
+            CompletableFuture<Tile> tile = this.tiles.get(i);
+            if (tile != null && tile.isDone() && !tile.isCompletedExceptionally()) loaded++;
+        }
+        return loaded;
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        long bytes = 16 + 4L * this.tiles.length();
+        for (int i = 0; i < this.tiles.length(); i++) {
+            CompletableFuture<Tile> tile = this.tiles.get(i);
+            if (tile != null && tile.isDone() && !tile.isCompletedExceptionally()) {
+                bytes += tile.join().raster().getMemoryFootprint();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return a raster reading any tile it hasn't decoded yet from {@code source}, keeping the decoded tiles of this
+     * one whose source didn't change. the pixel regions of decoded tiles that did change are added to {@code changed};
+     * tiles that were never decoded can't have been read, so they don't count
+     */
+    public TileGridRaster reload(TileGridRaster source, List<int[]> changed) throws IOException {
+        AtomicReferenceArray<CompletableFuture<Tile>> kept = new AtomicReferenceArray<>(source.tiles.length());
+        boolean sameGrid = this.grid.equals(source.grid);
+        int size = this.grid.tileSize();
+        for (int row = 0; row < this.grid.rows(); row++) {
+            for (int column = 0; column < this.grid.columns(); column++) {
+                CompletableFuture<Tile> tile = this.tiles.get(row * this.grid.columns() + column);
+                if (tile == null || !tile.isDone() || tile.isCompletedExceptionally()) continue;
+                if (sameGrid && Arrays.equals(tile.join().hash(), source.loader.hash(row, column))) {
+                    kept.set(row * this.grid.columns() + column, tile);
+                    continue;
+                }
+                changed.add(new int[]{column * size, row * size, (column + 1) * size, (row + 1) * size});
+            }
+        }
+        return new TileGridRaster(source.grid, source.name, source.loader, source.executor, kept);
+    }
+}
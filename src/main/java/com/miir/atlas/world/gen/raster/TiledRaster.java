@@ -0,0 +1,151 @@
+package com.miir.atlas.world.gen.raster;
+
+import java.util.List;
+
+/**
+ * a raster split into square tiles that are each encoded on their own, so uniform areas cost next to nothing and a
+ * pixel read only ever decodes within one tile.
+ */
+public abstract class TiledRaster implements MapRaster {
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    protected final int width;
+    protected final int height;
+    protected final int tilesX;
+    protected final Tile[] tiles;
+
+    protected TiledRaster(int width, int height, Tile[] tiles) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+        this.tiles = tiles;
+    }
+
+    protected interface Tile {
+        /**
+         * @param x column within the tile
+         * @param z row within the tile
+         */
+        int get(int x, int z);
+
+        long getMemoryFootprint();
+    }
+
+    protected record ConstantTile(int value) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            return this.value;
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 16;
+        }
+    }
+
+    /**
+     * the fallback for tiles that don't compress: one int per pixel
+     */
+    protected record IntTile(int width, int[] values) implements Tile {
+        @Override
+        public int get(int x, int z) {
+            return this.values[z * this.width + x];
+        }
+
+        @Override
+        public long getMemoryFootprint() {
+            return 24 + 16 + 4L * this.values.length;
+        }
+    }
+
+    /**
+     * encodes every tile of {@code source} with {@code encoder}, which gets the tile's pixels row-major
+     */
+    protected static Tile[] encode(MapRaster source, TileEncoder encoder) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+        int tilesZ = (height + TILE_MASK) >> TILE_SHIFT;
+        Tile[] tiles = new Tile[tilesX * tilesZ];
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (int tz = 0; tz < tilesZ; tz++) {
+            int z0 = tz << TILE_SHIFT;
+            int tileHeight = Math.min(TILE_SIZE, height - z0);
+            for (int tx = 0; tx < tilesX; tx++) {
+                int x0 = tx << TILE_SHIFT;
+                int tileWidth = Math.min(TILE_SIZE, width - x0);
+                for (int z = 0; z < tileHeight; z++) {
+                    for (int x = 0; x < tileWidth; x++) {
+                        pixels[z * tileWidth + x] = source.get(x0 + x, z0 + z);
+                    }
+                }
+                tiles[tz * tilesX + tx] = encoder.encode(pixels, tileWidth, tileHeight);
+            }
+        }
+        return tiles;
+    }
+
+    @FunctionalInterface
+    protected interface TileEncoder {
+        /**
+         * @param pixels the tile's pixels, row-major. only the first {@code width * height} are valid and the array is
+         *               reused, so it must be copied if it is kept
+         */
+        Tile encode(int[] pixels, int width, int height);
+    }
+
+    /**
+     * @return a raster of the same kind as this one, backed by the given tiles
+     */
+    protected abstract TiledRaster withTiles(Tile[] tiles);
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int get(int x, int z) {
+        return this.tiles[(z >> TILE_SHIFT) * this.tilesX + (x >> TILE_SHIFT)].get(x & TILE_MASK, z & TILE_MASK);
+    }
+
+    @Override
+    public float getFloat(int x, int z) {
+        return this.get(x, z);
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        long bytes = 32 + 16 + 4L * this.tiles.length;
+        for (Tile tile : this.tiles) {
+            bytes += tile.getMemoryFootprint();
+        }
+        return bytes;
+    }
+
+    /**
+     * takes the source's tiles wherever a region touches them and keeps sharing every other tile. pixels outside the
+     * regions are equal in both rasters, so whole tiles can be swapped even if a region only covers part of one
+     */
+    @Override
+    public MapRaster patch(MapRaster source, List<int[]> regions) {
+        if (source.getClass() != this.getClass()) return source;
+        TiledRaster tiled = (TiledRaster) source;
+        Tile[] next = this.tiles.clone();
+        for (int[] region : regions) {
+            for (int tz = region[1] >> TILE_SHIFT; tz <= (region[3] - 1) >> TILE_SHIFT; tz++) {
+                for (int tx = region[0] >> TILE_SHIFT; tx <= (region[2] - 1) >> TILE_SHIFT; tx++) {
+                    next[tz * this.tilesX + tx] = tiled.tiles[tz * this.tilesX + tx];
+                }
+            }
+        }
+        return this.withTiles(next);
+    }
+}